@@ -0,0 +1,92 @@
+package jar.shaw.tools.benchmark;
+
+import jar.shaw.tools.db.DBHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link DBHelper#batchInsert(Connection, java.util.Iterator, int, int)}和
+ * {@link DBHelper#multiRowInsert(Connection, java.util.Iterator)}的吞吐量，
+ * 一次操作是插入rows行并提交，每行的吞吐量为ops/s乘以rows</p>
+ * <p>实体数据在Trial开始前生成好，表在每次操作前清空，所以测到的是映射、绑定和H2执行的开销</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/26</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 5, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class BatchInsertBenchmark
+{
+    @Param({"4", "16"})
+    private int width;
+
+    @Param({"1000", "10000"})
+    private int rows;
+
+    @Param({"100", "1000"})
+    private int batchSize;
+
+    private Class<?> entityClass;
+    private List<Object> entities;
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        entityClass = BenchmarkEntities.entityClass(width);
+        entities = BenchmarkEntities.create(width, rows);
+        connection = Databases.open(entityClass);
+        connection.setAutoCommit(false);
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() throws SQLException
+    {
+        Databases.truncate(connection, entityClass);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException
+    {
+        connection.close();
+    }
+
+    @Benchmark
+    public int[] batchInsert() throws SQLException
+    {
+        int[] counts = DBHelper.batchInsert(connection, entities.iterator(), batchSize, 0);
+        connection.commit();
+        return counts;
+    }
+
+    /**
+     * 多行VALUES的语句大小由方言决定，和batchSize无关
+     */
+    @Benchmark
+    public long multiRowInsert() throws SQLException
+    {
+        long count = DBHelper.multiRowInsert(connection, entities.iterator());
+        connection.commit();
+        return count;
+    }
+}
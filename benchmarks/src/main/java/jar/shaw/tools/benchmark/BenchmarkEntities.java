@@ -0,0 +1,318 @@
+package jar.shaw.tools.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>基准测试用的实体类，按列数分为窄表和宽表，没有{@link jar.shaw.tools.db.TableName}注解，走反射映射</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/26</p>
+ */
+public final class BenchmarkEntities
+{
+    private BenchmarkEntities()
+    {
+    }
+
+    /**
+     * @param width 列数，4或16
+     * @return 对应的实体类
+     */
+    public static Class<?> entityClass(int width)
+    {
+        switch (width)
+        {
+            case 4:
+                return Narrow.class;
+            case 16:
+                return Wide.class;
+            default:
+                throw new IllegalArgumentException("unsupported width: " + width);
+        }
+    }
+
+    /**
+     * 生成确定性的实体数据，同样的参数每次得到同样的数据
+     * @param width 列数，4或16
+     * @param rows 行数
+     * @return 实体列表
+     */
+    public static List<Object> create(int width, int rows)
+    {
+        List<Object> entities = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+        {
+            entities.add(width == 4 ? narrow(i) : wide(i));
+        }
+        return entities;
+    }
+
+    private static Narrow narrow(int i)
+    {
+        Narrow n = new Narrow();
+        n.setCode(i);
+        n.setName("name-" + i);
+        n.setAmount(i * 1.5);
+        n.setCreated(new Timestamp(1569427200000L + i * 1000L));
+        return n;
+    }
+
+    private static Wide wide(int i)
+    {
+        Wide w = new Wide();
+        w.setCode(i);
+        w.setName("name-" + i);
+        w.setAmount(i * 1.5);
+        w.setCreated(new Timestamp(1569427200000L + i * 1000L));
+        w.setOrderId(1000000L + i);
+        w.setCustomer("customer-" + (i % 1000));
+        w.setAddress("No." + i + " Some Street, Some City");
+        w.setQuantity(i % 100);
+        w.setPrice(BigDecimal.valueOf(i % 10000, 2));
+        w.setPaid(i % 2 == 0);
+        w.setRemark(i % 10 == 0 ? null : "remark-" + i);
+        w.setStatus((short) (i % 5));
+        w.setVersion((long) i);
+        w.setUpdated(new Timestamp(1569427200000L + i * 2000L));
+        w.setDiscount(i % 3 * 0.1);
+        w.setChannel(i % 2 == 0 ? "web" : "app");
+        return w;
+    }
+
+    /**
+     * 4列的窄表
+     */
+    public static class Narrow
+    {
+        private Integer code;
+        private String name;
+        private Double amount;
+        private Timestamp created;
+
+        public Integer getCode()
+        {
+            return code;
+        }
+
+        public void setCode(Integer code)
+        {
+            this.code = code;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public void setName(String name)
+        {
+            this.name = name;
+        }
+
+        public Double getAmount()
+        {
+            return amount;
+        }
+
+        public void setAmount(Double amount)
+        {
+            this.amount = amount;
+        }
+
+        public Timestamp getCreated()
+        {
+            return created;
+        }
+
+        public void setCreated(Timestamp created)
+        {
+            this.created = created;
+        }
+    }
+
+    /**
+     * 16列的宽表
+     */
+    public static class Wide
+    {
+        private Integer code;
+        private String name;
+        private Double amount;
+        private Timestamp created;
+        private Long orderId;
+        private String customer;
+        private String address;
+        private Integer quantity;
+        private BigDecimal price;
+        private Boolean paid;
+        private String remark;
+        private Short status;
+        private Long version;
+        private Timestamp updated;
+        private Double discount;
+        private String channel;
+
+        public Integer getCode()
+        {
+            return code;
+        }
+
+        public void setCode(Integer code)
+        {
+            this.code = code;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public void setName(String name)
+        {
+            this.name = name;
+        }
+
+        public Double getAmount()
+        {
+            return amount;
+        }
+
+        public void setAmount(Double amount)
+        {
+            this.amount = amount;
+        }
+
+        public Timestamp getCreated()
+        {
+            return created;
+        }
+
+        public void setCreated(Timestamp created)
+        {
+            this.created = created;
+        }
+
+        public Long getOrderId()
+        {
+            return orderId;
+        }
+
+        public void setOrderId(Long orderId)
+        {
+            this.orderId = orderId;
+        }
+
+        public String getCustomer()
+        {
+            return customer;
+        }
+
+        public void setCustomer(String customer)
+        {
+            this.customer = customer;
+        }
+
+        public String getAddress()
+        {
+            return address;
+        }
+
+        public void setAddress(String address)
+        {
+            this.address = address;
+        }
+
+        public Integer getQuantity()
+        {
+            return quantity;
+        }
+
+        public void setQuantity(Integer quantity)
+        {
+            this.quantity = quantity;
+        }
+
+        public BigDecimal getPrice()
+        {
+            return price;
+        }
+
+        public void setPrice(BigDecimal price)
+        {
+            this.price = price;
+        }
+
+        public Boolean getPaid()
+        {
+            return paid;
+        }
+
+        public void setPaid(Boolean paid)
+        {
+            this.paid = paid;
+        }
+
+        public String getRemark()
+        {
+            return remark;
+        }
+
+        public void setRemark(String remark)
+        {
+            this.remark = remark;
+        }
+
+        public Short getStatus()
+        {
+            return status;
+        }
+
+        public void setStatus(Short status)
+        {
+            this.status = status;
+        }
+
+        public Long getVersion()
+        {
+            return version;
+        }
+
+        public void setVersion(Long version)
+        {
+            this.version = version;
+        }
+
+        public Timestamp getUpdated()
+        {
+            return updated;
+        }
+
+        public void setUpdated(Timestamp updated)
+        {
+            this.updated = updated;
+        }
+
+        public Double getDiscount()
+        {
+            return discount;
+        }
+
+        public void setDiscount(Double discount)
+        {
+            this.discount = discount;
+        }
+
+        public String getChannel()
+        {
+            return channel;
+        }
+
+        public void setChannel(String channel)
+        {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package jar.shaw.tools.benchmark;
+
+import jar.shaw.tools.db.DBHelper;
+import jar.shaw.tools.db.Model;
+import jar.shaw.tools.db.StandardDialect;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基准测试用的H2内存数据库，每次打开的都是一个新库，互不影响
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/26</p>
+ */
+final class Databases
+{
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private Databases()
+    {
+    }
+
+    /**
+     * 打开一个新的内存库并建好实体对应的表，连接关闭后库随之销毁
+     * @param entityClass 实体类
+     * @return 数据库连接
+     * @throws SQLException SQLException
+     */
+    static Connection open(Class<?> entityClass) throws SQLException
+    {
+        Connection connection = DriverManager.getConnection("jdbc:h2:mem:bench" + SEQUENCE.incrementAndGet());
+        DBHelper.createTable(connection, entityClass, StandardDialect.H2);
+        return connection;
+    }
+
+    /**
+     * 清空实体对应的表
+     * @param connection 数据库连接
+     * @param entityClass 实体类
+     * @throws SQLException SQLException
+     */
+    static void truncate(Connection connection, Class<?> entityClass) throws SQLException
+    {
+        try (Statement statement = connection.createStatement())
+        {
+            statement.execute("TRUNCATE TABLE " + Model.getTableName(entityClass));
+        }
+    }
+}
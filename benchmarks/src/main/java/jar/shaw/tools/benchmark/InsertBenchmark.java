@@ -0,0 +1,79 @@
+package jar.shaw.tools.benchmark;
+
+import jar.shaw.tools.db.DBHelper;
+import jar.shaw.tools.db.StatementCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link DBHelper#insert(Connection, Object)}单行插入的吞吐量，对比连接是否由{@link StatementCache}包装，
+ * autocommit为true，表在每轮迭代前清空</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/26</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 5, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class InsertBenchmark
+{
+    @Param({"4", "16"})
+    private int width;
+
+    @Param({"false", "true"})
+    private boolean statementCache;
+
+    private Class<?> entityClass;
+    private List<Object> entities;
+    private Connection connection;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        entityClass = BenchmarkEntities.entityClass(width);
+        entities = BenchmarkEntities.create(width, 1024);
+        connection = Databases.open(entityClass);
+        if (statementCache)
+        {
+            connection = StatementCache.wrap(connection, 16);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException
+    {
+        Databases.truncate(connection, entityClass);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException
+    {
+        connection.close();
+    }
+
+    @Benchmark
+    public void insert() throws SQLException
+    {
+        DBHelper.insert(connection, entities.get(next++ & 1023));
+    }
+}
@@ -0,0 +1,59 @@
+package jar.shaw.tools.benchmark;
+
+import jar.shaw.tools.db.DBHelper;
+import jar.shaw.tools.db.Model;
+import jar.shaw.tools.db.StandardDialect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Model}中表名和列的反射解析的吞吐量，不涉及数据库
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/26</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 20, time = 1)
+@Fork(value = 5, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ModelBenchmark
+{
+    @Param({"4", "16"})
+    private int width;
+
+    private Class<?> entityClass;
+
+    @Setup
+    public void setUp()
+    {
+        entityClass = BenchmarkEntities.entityClass(width);
+    }
+
+    @Benchmark
+    public String tableName()
+    {
+        return Model.getTableName(entityClass);
+    }
+
+    /**
+     * 建表语句需要解析所有列的名称和类型
+     */
+    @Benchmark
+    public String buildTableSQL()
+    {
+        return DBHelper.buildTableSQL(entityClass, StandardDialect.H2);
+    }
+}
@@ -0,0 +1,72 @@
+package jar.shaw.tools.benchmark;
+
+import jar.shaw.tools.db.DBHelper;
+import jar.shaw.tools.db.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link DBHelper#query(Connection, Class, String, Object...)}将结果集映射为实体的吞吐量，一次操作是读取rows行
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/26</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 5, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class QueryBenchmark
+{
+    @Param({"4", "16"})
+    private int width;
+
+    @Param({"1000", "10000"})
+    private int rows;
+
+    private Class<?> entityClass;
+    private Connection connection;
+    private String sql;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        entityClass = BenchmarkEntities.entityClass(width);
+        connection = Databases.open(entityClass);
+        DBHelper.batchInsert(connection, BenchmarkEntities.create(width, rows).iterator(), 1000);
+        sql = "SELECT * FROM " + Model.getTableName(entityClass);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException
+    {
+        connection.close();
+    }
+
+    @Benchmark
+    public void query(Blackhole blackhole) throws SQLException
+    {
+        try (Stream<?> entities = DBHelper.query(connection, entityClass, sql))
+        {
+            entities.forEach(blackhole::consume);
+        }
+    }
+}
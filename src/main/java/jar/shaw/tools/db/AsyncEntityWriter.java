@@ -0,0 +1,478 @@
+package jar.shaw.tools.db;
+
+import jar.shaw.tools.lambda.ThrowableSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>异步写入实体对象，调用线程只把对象放入有界的无锁队列，由后台线程按实体类分组后批量插入，
+ * 数据库的延迟不会加到调用线程上</p>
+ * <p>队列中积累了batchSize个对象，或者距离上次写入超过flushInterval时，后台线程把队列中的对象写入数据库，
+ * 每次写入从连接提供者获取一个连接，在一个事务中提交。队列满时的处理方式由{@link Backpressure}指定</p>
+ * <p>后台线程是守护线程，关闭应用前需要调用{@link #close()}，它会等待队列中剩余的对象全部写入</p>
+ * 例如：
+ * <pre>
+ *     AsyncEntityWriter writer = new AsyncEntityWriter(dataSource)
+ *         .capacity(100000).batchSize(1000).flushInterval(200, TimeUnit.MILLISECONDS)
+ *         .backpressure(AsyncEntityWriter.Backpressure.DROP)
+ *         .start();
+ *     writer.write(user);
+ *     ...
+ *     writer.close();
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/18</p>
+ */
+public class AsyncEntityWriter implements AutoCloseable
+{
+    private static Logger log = LoggerFactory.getLogger(AsyncEntityWriter.class);
+
+    /**
+     * 队列满时的处理方式
+     */
+    public enum Backpressure
+    {
+        /**
+         * 阻塞调用线程直到队列有空位
+         */
+        BLOCK,
+        /**
+         * 丢弃该对象，{@link #write(Object)}返回false
+         */
+        DROP,
+        /**
+         * 抛出{@link IllegalStateException}
+         */
+        FAIL
+    }
+
+    private final ThrowableSupplier<Connection> connectionSupplier;
+    private int capacity = 10000;
+    private int batchSize = 1000;
+    private long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(1000);
+    private Backpressure backpressure = Backpressure.BLOCK;
+    private BiConsumer<List<?>, Exception> errorHandler =
+        (objects, e) -> log.error("failed to write " + objects.size() + " objects: " + e.getLocalizedMessage(), e);
+
+    private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private volatile boolean running;
+    private volatile boolean closed;
+    private Thread writer;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+
+    /**
+     * 创建异步写入器
+     * @param dataSource 数据源，每次写入从中获取一个连接，用完后关闭
+     */
+    public AsyncEntityWriter(DataSource dataSource)
+    {
+        this(dataSource::getConnection);
+    }
+
+    /**
+     * 创建异步写入器
+     * @param connectionSupplier 连接提供者，每次写入从中获取一个连接，用完后关闭
+     */
+    public AsyncEntityWriter(ThrowableSupplier<Connection> connectionSupplier)
+    {
+        this.connectionSupplier = connectionSupplier;
+    }
+
+    /**
+     * 设置队列容量，默认10000
+     * @param capacity 队列容量
+     * @return AsyncEntityWriter本身
+     */
+    public AsyncEntityWriter capacity(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * 设置积累多少个对象时写入一次，也是每次executeBatch的行数，默认1000
+     * @param batchSize 每批的行数
+     * @return AsyncEntityWriter本身
+     */
+    public AsyncEntityWriter batchSize(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 设置最长多久写入一次，默认1秒
+     * @param interval 时间间隔
+     * @param unit 时间单位
+     * @return AsyncEntityWriter本身
+     */
+    public AsyncEntityWriter flushInterval(long interval, TimeUnit unit)
+    {
+        if (interval <= 0)
+        {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+        this.flushIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * 设置队列满时的处理方式，默认{@link Backpressure#BLOCK}
+     * @param backpressure 队列满时的处理方式
+     * @return AsyncEntityWriter本身
+     */
+    public AsyncEntityWriter backpressure(Backpressure backpressure)
+    {
+        this.backpressure = backpressure;
+        return this;
+    }
+
+    /**
+     * 设置写入失败时的处理，参数是写入失败的对象和异常，默认记录错误日志，失败的对象不会重试
+     * @param errorHandler 写入失败时的处理
+     * @return AsyncEntityWriter本身
+     */
+    public AsyncEntityWriter onError(BiConsumer<List<?>, Exception> errorHandler)
+    {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    /**
+     * 启动后台写入线程
+     * @return AsyncEntityWriter本身
+     */
+    public synchronized AsyncEntityWriter start()
+    {
+        if (writer != null)
+        {
+            throw new IllegalStateException("already started");
+        }
+        running = true;
+        writer = new Thread(this::run, "async-entity-writer");
+        writer.setDaemon(true);
+        writer.start();
+        return this;
+    }
+
+    /**
+     * 将对象放入写入队列，队列满时按{@link Backpressure}处理
+     * @param entity 实体对象，映射规则同{@link DBHelper#batchInsert(Connection, java.util.List)}
+     * @return 放入队列时返回true，队列满并且丢弃时返回false
+     * @throws IllegalStateException 写入器未启动或者已关闭，或者队列满并且处理方式为{@link Backpressure#FAIL}
+     */
+    public boolean write(Object entity)
+    {
+        if (!running)
+        {
+            throw new IllegalStateException(closed ? "writer closed" : "writer not started");
+        }
+        while (!tryReserve())
+        {
+            switch (backpressure)
+            {
+                case DROP:
+                    dropped.incrementAndGet();
+                    return false;
+                case FAIL:
+                    throw new IllegalStateException("write queue full, capacity " + capacity);
+                default:
+                    LockSupport.unpark(writer);
+                    LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(100));
+                    if (!running)
+                    {
+                        throw new IllegalStateException("writer closed");
+                    }
+            }
+        }
+        if (!running)
+        {
+            //在上面的检查之后关闭，后台线程可能已经写完队列并退出
+            depth.decrementAndGet();
+            throw new IllegalStateException("writer closed");
+        }
+        queue.offer(entity);
+        if (depth.get() >= batchSize)
+        {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    private boolean tryReserve()
+    {
+        int current;
+        do
+        {
+            current = depth.get();
+            if (current >= capacity)
+            {
+                return false;
+            }
+        }
+        while (!depth.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * 停止接收新的对象，等待队列中剩余的对象全部写入后返回
+     */
+    @Override
+    public void close()
+    {
+        close(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止接收新的对象，最多等待指定的时间让队列中剩余的对象写入
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 队列中的对象全部写入时返回true，超时返回false
+     */
+    public boolean close(long timeout, TimeUnit unit)
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            closed = true;
+            running = false;
+            thread = writer;
+        }
+        if (thread == null)
+        {
+            return true;
+        }
+        LockSupport.unpark(thread);
+        try
+        {
+            unit.timedJoin(thread, timeout);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    private void run()
+    {
+        long lastFlush = System.nanoTime();
+        while (running || depth.get() > 0)
+        {
+            long wait = flushIntervalNanos - (System.nanoTime() - lastFlush);
+            if (running && depth.get() < batchSize && wait > 0)
+            {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            if (depth.get() > 0)
+            {
+                flush();
+            }
+            lastFlush = System.nanoTime();
+        }
+    }
+
+    /**
+     * 取出队列中当前的所有对象，按实体类分组写入
+     */
+    private void flush()
+    {
+        Map<Class<?>, List<Object>> groups = new LinkedHashMap<>();
+        Object entity;
+        int drained = 0;
+        while (drained < capacity && (entity = queue.poll()) != null)
+        {
+            groups.computeIfAbsent(entity.getClass(), c -> new ArrayList<>()).add(entity);
+            drained++;
+        }
+        if (drained == 0)
+        {
+            //depth在入队之前预留，对象还没有进入队列，不计为一次写入
+            return;
+        }
+        depth.addAndGet(-drained);
+        long start = System.nanoTime();
+        for (List<Object> objects : groups.values())
+        {
+            write(objects);
+        }
+        long elapsed = System.nanoTime() - start;
+        flushes.incrementAndGet();
+        flushNanos.addAndGet(elapsed);
+        lastFlushNanos = elapsed;
+        long max;
+        while (elapsed > (max = maxFlushNanos.get()) && !maxFlushNanos.compareAndSet(max, elapsed))
+        {
+            //被其他线程更新，重试
+        }
+    }
+
+    private void write(List<Object> objects)
+    {
+        Connection connection = null;
+        Boolean autoCommit = null;
+        try
+        {
+            connection = connectionSupplier.get();
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            DBHelper.batchInsert(connection, objects.iterator(), batchSize, 0);
+            connection.commit();
+            written.addAndGet(objects.size());
+        }
+        catch (Exception e)
+        {
+            failed.addAndGet(objects.size());
+            if (connection != null)
+            {
+                try
+                {
+                    connection.rollback();
+                }
+                catch (Exception rollbackError)
+                {
+                    e.addSuppressed(rollbackError);
+                }
+            }
+            try
+            {
+                errorHandler.accept(objects, e);
+            }
+            catch (RuntimeException handlerError)
+            {
+                log.error("error handler failed", handlerError);
+            }
+        }
+        finally
+        {
+            if (connection != null)
+            {
+                if (autoCommit != null)
+                {
+                    try
+                    {
+                        //连接池中的连接归还时要保持原来的自动提交设置
+                        connection.setAutoCommit(autoCommit);
+                    }
+                    catch (Exception e)
+                    {
+                        log.warn("failed to restore autocommit", e);
+                    }
+                }
+                try
+                {
+                    connection.close();
+                }
+                catch (Exception e)
+                {
+                    log.warn("failed to close connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 队列中等待写入的对象数
+     */
+    public int getQueueDepth()
+    {
+        return depth.get();
+    }
+
+    /**
+     * @return 已成功写入的对象数
+     */
+    public long getWritten()
+    {
+        return written.get();
+    }
+
+    /**
+     * @return 队列满时被丢弃的对象数
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * @return 写入失败的对象数
+     */
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    /**
+     * @return 后台线程写入的次数
+     */
+    public long getFlushes()
+    {
+        return flushes.get();
+    }
+
+    /**
+     * @return 最近一次写入的耗时，单位毫秒
+     */
+    public double getLastFlushMillis()
+    {
+        return lastFlushNanos / 1e6;
+    }
+
+    /**
+     * @return 最长一次写入的耗时，单位毫秒
+     */
+    public double getMaxFlushMillis()
+    {
+        return maxFlushNanos.get() / 1e6;
+    }
+
+    /**
+     * @return 平均每次写入的耗时，单位毫秒
+     */
+    public double getAverageFlushMillis()
+    {
+        long count = flushes.get();
+        return count == 0 ? 0 : flushNanos.get() / 1e6 / count;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AsyncEntityWriter{queueDepth=" + getQueueDepth() + ", written=" + getWritten() + ", dropped=" + getDropped()
+            + ", failed=" + getFailed() + ", flushes=" + getFlushes()
+            + ", avgFlushMillis=" + String.format("%.2f", getAverageFlushMillis())
+            + ", maxFlushMillis=" + String.format("%.2f", getMaxFlushMillis()) + "}";
+    }
+}
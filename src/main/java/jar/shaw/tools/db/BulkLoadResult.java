@@ -0,0 +1,81 @@
+package jar.shaw.tools.db;
+
+/**
+ * {@link BulkLoader}的加载结果，包括走的是批量加载还是分批插入，以及各阶段的耗时和吞吐量
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/20</p>
+ */
+public class BulkLoadResult
+{
+    private final long rows;
+    private final boolean bulk;
+    private final long stagingMillis;
+    private final long elapsedMillis;
+    private final Exception bulkError;
+
+    BulkLoadResult(long rows, boolean bulk, long stagingMillis, long elapsedMillis, Exception bulkError)
+    {
+        this.rows = rows;
+        this.bulk = bulk;
+        this.stagingMillis = stagingMillis;
+        this.elapsedMillis = elapsedMillis;
+        this.bulkError = bulkError;
+    }
+
+    /**
+     * @return 加载的行数
+     */
+    public long getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * @return 通过数据库的批量加载命令加载时返回true，回退到分批插入时返回false
+     */
+    public boolean isBulk()
+    {
+        return bulk;
+    }
+
+    /**
+     * @return 写临时CSV文件的耗时，单位毫秒，没有写文件时为0
+     */
+    public long getStagingMillis()
+    {
+        return stagingMillis;
+    }
+
+    /**
+     * @return 整个加载的耗时，包括写临时文件，单位毫秒
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return 行数除以总耗时得到的吞吐量，单位行/秒
+     */
+    public double getRowsPerSecond()
+    {
+        return elapsedMillis == 0 ? rows * 1000.0 : rows * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * @return 批量加载命令执行失败后回退到分批插入时，批量加载的异常，否则为null
+     */
+    public Exception getBulkError()
+    {
+        return bulkError;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BulkLoadResult{" + (bulk ? "bulk" : "batch") + ", rows=" + rows + ", stagingMillis=" + stagingMillis
+            + ", elapsedMillis=" + elapsedMillis + ", rowsPerSecond=" + String.format("%.1f", getRowsPerSecond())
+            + (bulkError == null ? "" : ", bulkError=" + bulkError) + "}";
+    }
+}
@@ -0,0 +1,343 @@
+package jar.shaw.tools.db;
+
+import jar.shaw.tools.io.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Iterator;
+
+/**
+ * <p>通过临时CSV文件和数据库自带的批量加载命令导入实体对象，比{@link DBHelper#batchInsert(Connection, Iterator, int, int)}快得多</p>
+ * <p>实体对象按{@link Model}的列顺序写入临时CSV文件，写文件用FileChannel和直接缓冲区，然后执行方言的批量加载命令：
+ * MySQL的LOAD DATA LOCAL INFILE，PostgreSQL的COPY FROM STDIN（通过驱动的CopyManager发送文件内容），H2的CSVREAD，格式见{@link Dialect#bulkLoadSQL(String, java.util.List, java.util.List, String)}</p>
+ * <p>方言不支持批量加载、实体包含byte[]列、或者批量加载命令执行失败（例如MySQL没有开启local_infile）时，
+ * 回退到分批插入，所以输入需要能遍历两次。两种方式的吞吐量都记录在{@link BulkLoadResult}中</p>
+ * 例如：
+ * <pre>
+ *     BulkLoadResult result = new BulkLoader().load(connection, users);
+ *     log.info(result.isBulk() + " " + result.getRowsPerSecond());
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/20</p>
+ */
+public class BulkLoader
+{
+    private static Logger log = LoggerFactory.getLogger(BulkLoader.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Dialect dialect;
+    private Path tempDirectory;
+    private int batchSize = 1000;
+
+    /**
+     * 设置数据库方言，默认根据连接自动识别
+     * @param dialect 数据库方言
+     * @return BulkLoader本身
+     */
+    public BulkLoader dialect(Dialect dialect)
+    {
+        this.dialect = dialect;
+        return this;
+    }
+
+    /**
+     * 设置临时CSV文件所在的目录，默认是系统临时目录。临时文件只由客户端读取，不需要数据库服务器能够访问
+     * @param tempDirectory 临时文件目录
+     * @return BulkLoader本身
+     */
+    public BulkLoader tempDirectory(Path tempDirectory)
+    {
+        this.tempDirectory = tempDirectory;
+        return this;
+    }
+
+    /**
+     * 设置回退到分批插入时每次executeBatch的行数，默认1000
+     * @param batchSize 每批的行数
+     * @return BulkLoader本身
+     */
+    public BulkLoader batchSize(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * <p>导入实体对象，该方法不会调用connection.commit()</p>
+     * <p>autocommit为false时批量加载命令在一个保存点中执行，失败后回滚到保存点再回退到分批插入</p>
+     * @param connection 数据库连接
+     * @param objects 要保存的实体对象，同一类型，回退到分批插入时会再遍历一次
+     * @return 导入结果
+     * @throws SQLException 分批插入失败
+     * @throws IOException 写临时文件失败
+     */
+    public <T> BulkLoadResult load(Connection connection, Iterable<T> objects) throws SQLException, IOException
+    {
+        long start = System.currentTimeMillis();
+        Iterator<T> iterator = objects.iterator();
+        if (!iterator.hasNext())
+        {
+            return new BulkLoadResult(0, true, 0, 0, null);
+        }
+        T first = iterator.next();
+        EntityMapper mapper = EntityMapper.of(first.getClass());
+        Dialect target = dialect == null ? Dialect.of(connection) : dialect;
+        Exception bulkError = null;
+        long stagingMillis = 0;
+        if (isBulkSupported(target, mapper))
+        {
+            String prefix = mapper.tableName() + "-";
+            Path file = tempDirectory == null ? Files.createTempFile(prefix, ".csv")
+                : Files.createTempFile(tempDirectory, prefix, ".csv");
+            try
+            {
+                long rows = writeCSV(file, mapper, first, iterator);
+                stagingMillis = System.currentTimeMillis() - start;
+                String sql = target.bulkLoadSQL(mapper.tableName(), mapper.columnNames(), mapper.columnTypes(),
+                    file.toAbsolutePath().toString());
+                Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+                try
+                {
+                    if (target.bulkLoadFromStdin())
+                    {
+                        copyIn(connection, sql, file);
+                    }
+                    else
+                    {
+                        try (Statement statement = connection.createStatement())
+                        {
+                            statement.executeUpdate(sql);
+                        }
+                    }
+                    if (savepoint != null)
+                    {
+                        connection.releaseSavepoint(savepoint);
+                    }
+                    return new BulkLoadResult(rows, true, stagingMillis, System.currentTimeMillis() - start, null);
+                }
+                catch (SQLException e)
+                {
+                    log.warn("bulk load into " + mapper.tableName() + " failed, falling back to batch insert: "
+                        + e.getLocalizedMessage());
+                    if (savepoint != null)
+                    {
+                        connection.rollback(savepoint);
+                    }
+                    bulkError = e;
+                }
+            }
+            finally
+            {
+                Files.deleteIfExists(file);
+            }
+        }
+        long rows = 0;
+        for (int count : DBHelper.batchInsert(connection, objects.iterator(), batchSize, 0))
+        {
+            rows += count;
+        }
+        return new BulkLoadResult(rows, false, stagingMillis, System.currentTimeMillis() - start, bulkError);
+    }
+
+    /**
+     * 通过PostgreSQL驱动的CopyManager把文件内容发送给COPY FROM STDIN，驱动是可选的依赖，所以通过反射调用
+     * @throws SQLException 连接不是PostgreSQL驱动的连接，或者COPY失败
+     */
+    private static void copyIn(Connection connection, String sql, Path file) throws SQLException, IOException
+    {
+        Object copyManager;
+        Method copyIn;
+        try
+        {
+            Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+            copyManager = pgConnection.getMethod("getCopyAPI").invoke(connection.unwrap(pgConnection));
+            copyIn = copyManager.getClass().getMethod("copyIn", String.class, InputStream.class);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw sqlException(e.getCause());
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new SQLException("PostgreSQL driver with CopyManager not found", e);
+        }
+        try (InputStream in = Files.newInputStream(file))
+        {
+            copyIn.invoke(copyManager, sql, in);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw sqlException(e.getCause());
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new SQLException("cannot call CopyManager.copyIn", e);
+        }
+    }
+
+    /**
+     * 驱动抛出的异常统一为SQLException，以便回退到分批插入
+     */
+    private static SQLException sqlException(Throwable cause)
+    {
+        return cause instanceof SQLException ? (SQLException) cause : new SQLException(cause.getMessage(), cause);
+    }
+
+    private static boolean isBulkSupported(Dialect dialect, EntityMapper mapper)
+    {
+        if (dialect.bulkLoadSQL(mapper.tableName(), mapper.columnNames(), mapper.columnTypes(), "") == null)
+        {
+            return false;
+        }
+        for (EntityMapper.Column column : mapper.columns())
+        {
+            if (column.type == byte[].class)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将实体对象逐行编码后写入文件，每行在StringBuilder中拼好后直接编码到缓冲区，缓冲区满时写入文件
+     * @return 写入的行数
+     */
+    private static <T> long writeCSV(Path file, EntityMapper mapper, T first, Iterator<T> objects) throws IOException
+    {
+        EntityMapper.Column[] columns = mapper.columns();
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        ByteBuffer buffer = BufferPool.acquireDirect(BUFFER_SIZE);
+        StringBuilder line = new StringBuilder(256);
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            Object entity = first;
+            while (true)
+            {
+                line.setLength(0);
+                for (int i = 0; i < columns.length; i++)
+                {
+                    if (i > 0)
+                    {
+                        line.append(',');
+                    }
+                    appendValue(line, columns[i].getter.apply(entity));
+                }
+                line.append('\n');
+                encode(encoder, CharBuffer.wrap(line), buffer, channel);
+                rows++;
+                if (!objects.hasNext())
+                {
+                    break;
+                }
+                entity = objects.next();
+            }
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+        finally
+        {
+            BufferPool.release(buffer);
+        }
+        return rows;
+    }
+
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer buffer, FileChannel channel)
+        throws IOException
+    {
+        encoder.reset();
+        while (true)
+        {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isUnderflow())
+            {
+                return;
+            }
+            if (result.isOverflow())
+            {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+            else
+            {
+                result.throwException();
+            }
+        }
+    }
+
+    /**
+     * 按{@link Dialect#bulkLoadSQL(String, java.util.List, java.util.List, String)}约定的格式写一个值，布尔值写成1和0，
+     * java.util.Date写成和Timestamp相同的格式
+     */
+    private static void appendValue(StringBuilder line, Object value)
+    {
+        if (value == null)
+        {
+            line.append("NULL");
+            return;
+        }
+        String text;
+        if (value instanceof Boolean)
+        {
+            text = (Boolean) value ? "1" : "0";
+        }
+        else if (value instanceof BigDecimal)
+        {
+            text = ((BigDecimal) value).toPlainString();
+        }
+        else if (value instanceof Date && !(value instanceof java.sql.Date || value instanceof java.sql.Time
+            || value instanceof Timestamp))
+        {
+            text = new Timestamp(((Date) value).getTime()).toString();
+        }
+        else
+        {
+            text = value.toString();
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c == '"')
+            {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+}
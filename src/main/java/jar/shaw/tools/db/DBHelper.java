@@ -1,16 +1,29 @@
 package jar.shaw.tools.db;
 
-import javafx.util.Pair;
-
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static jar.shaw.tools.util.ExceptionHelper.runtime;
-import static jar.shaw.tools.db.Model.getColumnAndGetters;
 import static jar.shaw.tools.db.Model.getColumnAndTypes;
 import static jar.shaw.tools.db.Model.getTableName;
 
@@ -22,6 +35,29 @@ import static jar.shaw.tools.db.Model.getTableName;
  */
 public class DBHelper
 {
+    /**
+     * 查询时默认的fetchSize
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private static volatile DBMetrics metrics = DBMetrics.NOOP;
+
+    /**
+     * 设置度量监听器，记录各操作的行数、绑定和执行耗时、失败次数，传入null时恢复为{@link DBMetrics#NOOP}
+     * @param metrics 度量监听器，例如{@link MetricsRegistry}
+     */
+    public static void setMetrics(DBMetrics metrics)
+    {
+        DBHelper.metrics = metrics == null ? DBMetrics.NOOP : metrics;
+    }
+
+    /**
+     * @return 当前的度量监听器
+     */
+    public static DBMetrics getMetrics()
+    {
+        return metrics;
+    }
 
     /**
      * 批量插入实体对象，该方法不会调用connection.commit()<p />
@@ -40,69 +76,602 @@ public class DBHelper
         {
             return;
         }
-        Class<?> clazz = objects.get(0).getClass();
-        PreparedStatement prepstmt = connection.prepareStatement(buildInsertSQL(clazz));
-        List<Pair<String, Method>> model = getColumnAndGetters(clazz);
+        EntityMapper mapper = EntityMapper.of(objects.get(0).getClass());
+        DBMetrics metrics = DBHelper.metrics;
+        long start = metrics == DBMetrics.NOOP ? 0 : System.nanoTime();
+        try
+        {
+            PreparedStatement prepstmt = connection.prepareStatement(mapper.insertSQL());
+
+            //设置参数值
+            for (Object o : objects)
+            {
+                mapper.bind(prepstmt, o);
+                prepstmt.addBatch();
+            }
+            long executeStart = metrics == DBMetrics.NOOP ? 0 : System.nanoTime();
+            prepstmt.executeBatch();
+            prepstmt.close();
+            if (metrics != DBMetrics.NOOP)
+            {
+                metrics.onExecute("batchInsert", mapper.entityClass(), mapper.tableName(), objects.size(),
+                    executeStart - start, System.nanoTime() - executeStart);
+            }
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            metrics.onFailure("batchInsert", mapper.entityClass(), mapper.tableName(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 分批插入实体对象，每batchSize行执行一次executeBatch，该方法不会调用connection.commit()<p />
+     * 内存占用只和batchSize有关，与数据总量无关，适合大数据量的导入
+     * @param connection 数据库连接
+     * @param objects 要保存的实体对象
+     * @param batchSize 每批的行数
+     * @return 每一批插入的行数
+     * @throws SQLException SQLException
+     * @see #batchInsert(Connection, Iterator, int, int)
+     */
+    public static <T> int[] batchInsert(Connection connection, Iterator<T> objects, int batchSize) throws SQLException
+    {
+        return batchInsert(connection, objects, batchSize, 0);
+    }
 
-        //设置参数值
-        for (Object o : objects)
+    /**
+     * 分批插入实体对象，每batchSize行执行一次executeBatch，每commitInterval批调用一次connection.commit()<p />
+     * 如果需要按批提交，调用此方法前需要将autocommit设置为false，最后不足commitInterval的批次也会提交<p />
+     * 内存占用只和batchSize有关，与数据总量无关，适合大数据量的导入<p />
+     * 实体到表的映射规则同{@link #batchInsert(Connection, List)}
+     * @param connection 数据库连接
+     * @param objects 要保存的实体对象
+     * @param batchSize 每批的行数
+     * @param commitInterval 每多少批提交一次，小于等于0时不提交
+     * @return 每一批插入的行数
+     * @throws SQLException SQLException
+     */
+    public static <T> int[] batchInsert(Connection connection, Iterator<T> objects, int batchSize, int commitInterval)
+        throws SQLException
+    {
+        return executeBatches("batchInsert", connection, objects, batchSize, commitInterval, EntityMapper::insertSQL,
+            EntityMapper::bind);
+    }
+
+    /**
+     * 分批插入流中的实体对象，流只被遍历一次，参数含义同{@link #batchInsert(Connection, Iterator, int, int)}
+     * @param connection 数据库连接
+     * @param objects 要保存的实体对象流
+     * @param batchSize 每批的行数
+     * @param commitInterval 每多少批提交一次，小于等于0时不提交
+     * @return 每一批插入的行数
+     * @throws SQLException SQLException
+     */
+    public static <T> int[] batchInsert(Connection connection, Stream<T> objects, int batchSize, int commitInterval)
+        throws SQLException
+    {
+        return batchInsert(connection, objects.iterator(), batchSize, commitInterval);
+    }
+
+    /**
+     * 分批插入Spliterator中的实体对象，参数含义同{@link #batchInsert(Connection, Iterator, int, int)}
+     * @param connection 数据库连接
+     * @param objects 要保存的实体对象
+     * @param batchSize 每批的行数
+     * @param commitInterval 每多少批提交一次，小于等于0时不提交
+     * @return 每一批插入的行数
+     * @throws SQLException SQLException
+     */
+    public static <T> int[] batchInsert(Connection connection, Spliterator<T> objects, int batchSize, int commitInterval)
+        throws SQLException
+    {
+        return batchInsert(connection, Spliterators.iterator(objects), batchSize, commitInterval);
+    }
+
+    /**
+     * 用多行VALUES语句插入实体对象，数据库方言根据连接自动识别，参数含义同{@link #multiRowInsert(Connection, Dialect, Iterator)}
+     * @param connection 数据库连接
+     * @param objects 要保存的实体对象
+     * @return 插入的总行数
+     * @throws SQLException SQLException
+     */
+    public static <T> long multiRowInsert(Connection connection, Iterator<T> objects) throws SQLException
+    {
+        return multiRowInsert(connection, Dialect.of(connection), objects);
+    }
+
+    /**
+     * 用INSERT INTO t(..) VALUES(..),(..),...形式的多行语句插入实体对象，该方法不会调用connection.commit()<p />
+     * 每条语句包含的行数由列数和方言的绑定参数上限决定，适用于不会把batch改写成多行插入的驱动，
+     * 每条语句只需要一次网络往返<p />
+     * 整条语句的SQL按行数缓存，最后不足一条语句的行单独用一条缓存的语句插入<p />
+     * 实体到表的映射规则同{@link #batchInsert(Connection, List)}
+     * @param connection 数据库连接
+     * @param dialect 数据库方言
+     * @param objects 要保存的实体对象
+     * @return 插入的总行数
+     * @throws SQLException SQLException
+     */
+    public static <T> long multiRowInsert(Connection connection, Dialect dialect, Iterator<T> objects) throws SQLException
+    {
+        if (!objects.hasNext())
+        {
+            return 0;
+        }
+        T first = objects.next();
+        EntityMapper mapper = EntityMapper.of(first.getClass());
+        int rowsPerStatement = mapper.rowsPerStatement(dialect);
+        int columnCount = mapper.columns().length;
+        Object[] buffer = new Object[rowsPerStatement];
+        buffer[0] = first;
+        int rows = 1;
+        long total = 0;
+        PreparedStatement full = null;
+        try
+        {
+            while (objects.hasNext())
+            {
+                if (rows == rowsPerStatement)
+                {
+                    if (full == null)
+                    {
+                        full = connection.prepareStatement(mapper.multiRowInsertSQL(dialect, rowsPerStatement));
+                    }
+                    for (int i = 0; i < rows; i++)
+                    {
+                        mapper.bind(full, buffer[i], i * columnCount);
+                    }
+                    full.executeUpdate();
+                    total += rows;
+                    rows = 0;
+                }
+                buffer[rows++] = objects.next();
+            }
+            PreparedStatement last = rows == rowsPerStatement && full != null
+                ? full : connection.prepareStatement(mapper.multiRowInsertSQL(dialect, rows));
+            try
+            {
+                for (int i = 0; i < rows; i++)
+                {
+                    mapper.bind(last, buffer[i], i * columnCount);
+                }
+                last.executeUpdate();
+                total += rows;
+            }
+            finally
+            {
+                if (last != full)
+                {
+                    last.close();
+                }
+            }
+        }
+        finally
         {
-            for (int i = 0; i < model.size(); i++)
+            if (full != null)
             {
-                int k = i;
-                runtime(() -> prepstmt.setObject(k + 1, model.get(k).getValue().invoke(o)));
+                full.close();
             }
-            prepstmt.addBatch();
         }
-        prepstmt.executeBatch();
-        prepstmt.close();
+        return total;
+    }
+
+    /**
+     * 按键批量插入或更新实体对象，数据库方言根据连接自动识别，所有对象在一批中执行，该方法不会调用connection.commit()
+     * @param connection 数据库连接
+     * @param objects 要保存的实体对象
+     * @throws SQLException SQLException
+     * @see #batchUpsert(Connection, Dialect, Iterator, int, int)
+     */
+    public static void batchUpsert(Connection connection, List<?> objects) throws SQLException
+    {
+        batchUpsert(connection, Dialect.of(connection), objects.iterator(), Math.max(objects.size(), 1), 0);
+    }
+
+    /**
+     * <p>按键分批插入或更新实体对象，键不存在时插入，存在时更新其他列，一遍就能完成数据的重新同步</p>
+     * <p>键由实体类中{@link KeyColumn}标注的字段指定，表上需要有对应的主键或唯一索引。
+     * 语句由方言生成，例如MySQL的ON DUPLICATE KEY UPDATE，PostgreSQL的ON CONFLICT，H2的MERGE ... KEY</p>
+     * <p>分批和提交的规则同{@link #batchInsert(Connection, Iterator, int, int)}</p>
+     * @param connection 数据库连接
+     * @param dialect 数据库方言
+     * @param objects 要保存的实体对象
+     * @param batchSize 每批的行数
+     * @param commitInterval 每多少批提交一次，小于等于0时不提交
+     * @return 每一批的行数
+     * @throws SQLException SQLException
+     */
+    public static <T> int[] batchUpsert(Connection connection, Dialect dialect, Iterator<T> objects, int batchSize,
+                                        int commitInterval) throws SQLException
+    {
+        return executeBatches("batchUpsert", connection, objects, batchSize, commitInterval, m -> m.upsertSQL(dialect),
+            EntityMapper::bind);
+    }
+
+    /**
+     * 按键批量更新实体对象，所有对象在一批中执行，该方法不会调用connection.commit()
+     * @param connection 数据库连接
+     * @param objects 要更新的实体对象
+     * @throws SQLException SQLException
+     * @see #batchUpdate(Connection, Iterator, int, int)
+     */
+    public static void batchUpdate(Connection connection, List<?> objects) throws SQLException
+    {
+        batchUpdate(connection, objects.iterator(), Math.max(objects.size(), 1), 0);
+    }
+
+    /**
+     * <p>按键分批更新实体对象，用{@link KeyColumn}标注的列作为条件，更新其他所有列，
+     * 语句为UPDATE t SET a=?,b=? WHERE id=?，每批通过executeBatch执行</p>
+     * <p>分批和提交的规则同{@link #batchInsert(Connection, Iterator, int, int)}，
+     * 连接由{@link StatementCache#wrap(Connection, int)}包装时复用缓存的PreparedStatement</p>
+     * @param connection 数据库连接
+     * @param objects 要更新的实体对象
+     * @param batchSize 每批的行数
+     * @param commitInterval 每多少批提交一次，小于等于0时不提交
+     * @return 每一批的行数
+     * @throws SQLException SQLException
+     * @throws IllegalStateException 实体类没有{@link KeyColumn}或者没有键以外的列
+     */
+    public static <T> int[] batchUpdate(Connection connection, Iterator<T> objects, int batchSize, int commitInterval)
+        throws SQLException
+    {
+        return executeBatches("batchUpdate", connection, objects, batchSize, commitInterval, EntityMapper::updateSQL,
+            EntityMapper::bindUpdate);
+    }
+
+    /**
+     * 按键批量删除，数据库方言根据连接自动识别，该方法不会调用connection.commit()
+     * @param connection 数据库连接
+     * @param clazz 实体类
+     * @param ids 要删除的键
+     * @return 删除的行数
+     * @throws SQLException SQLException
+     * @see #batchDeleteByIds(Connection, Dialect, Class, Iterator)
+     */
+    public static long batchDeleteByIds(Connection connection, Class<?> clazz, Collection<?> ids) throws SQLException
+    {
+        return batchDeleteByIds(connection, Dialect.of(connection), clazz, ids.iterator());
+    }
+
+    /**
+     * <p>按键批量删除，语句为DELETE FROM t WHERE id IN (?,?,...)，键由实体类中唯一的{@link KeyColumn}指定</p>
+     * <p>每条语句的键的个数不超过方言的参数上限和{@link Dialect#maxRowsPerStatement()}，
+     * 键满一条语句时复用同一个语句，最后不满的一组单独生成语句，该方法不会调用connection.commit()</p>
+     * @param connection 数据库连接
+     * @param dialect 数据库方言
+     * @param clazz 实体类
+     * @param ids 要删除的键，按键列的字段类型调用对应的setXxx方法绑定，和插入时相同，类型不一致时用setObject
+     * @return 删除的行数
+     * @throws SQLException SQLException
+     * @throws IllegalStateException 实体类的{@link KeyColumn}不是恰好一个
+     */
+    public static long batchDeleteByIds(Connection connection, Dialect dialect, Class<?> clazz, Iterator<?> ids)
+        throws SQLException
+    {
+        EntityMapper mapper = EntityMapper.of(clazz);
+        if (!ids.hasNext())
+        {
+            return 0;
+        }
+        int idsPerStatement = EntityMapper.idsPerStatement(dialect);
+        EntityMapper.ColumnBinder binder = mapper.keyValueBinder();
+        Object[] buffer = new Object[idsPerStatement];
+        long total = 0;
+        DBMetrics metrics = DBHelper.metrics;
+        boolean timed = metrics != DBMetrics.NOOP;
+        try
+        {
+            while (ids.hasNext())
+            {
+                long bindStart = timed ? System.nanoTime() : 0;
+                int n = 0;
+                while (n < idsPerStatement && ids.hasNext())
+                {
+                    buffer[n++] = ids.next();
+                }
+                String sql = mapper.deleteByIdsSQL(n);
+                PreparedStatement prepstmt = prepare(connection, sql);
+                try
+                {
+                    for (int i = 0; i < n; i++)
+                    {
+                        binder.bind(prepstmt, i + 1, buffer[i]);
+                    }
+                    long executeStart = timed ? System.nanoTime() : 0;
+                    total += prepstmt.executeUpdate();
+                    if (timed)
+                    {
+                        metrics.onExecute("batchDeleteByIds", mapper.entityClass(), mapper.tableName(), n,
+                            executeStart - bindStart, System.nanoTime() - executeStart);
+                    }
+                }
+                finally
+                {
+                    release(connection, sql, prepstmt);
+                }
+            }
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            metrics.onFailure("batchDeleteByIds", mapper.entityClass(), mapper.tableName(), e);
+            throw e;
+        }
+        return total;
+    }
+
+    /**
+     * 通过临时CSV文件和数据库的批量加载命令导入实体对象，不支持时回退到分批插入，该方法不会调用connection.commit()，
+     * 详细说明见{@link BulkLoader}
+     * @param connection 数据库连接
+     * @param objects 要保存的实体对象，回退到分批插入时会再遍历一次
+     * @return 导入结果，包括走的是哪种方式和吞吐量
+     * @throws SQLException SQLException
+     * @throws IOException 写临时文件失败
+     */
+    public static <T> BulkLoadResult bulkLoad(Connection connection, Iterable<T> objects) throws SQLException, IOException
+    {
+        return new BulkLoader().load(connection, objects);
     }
 
     /**
      * 插入单个实体对象，该方法不会调用connection.commit()<p />
      * 实体到表的映射规则有以下两种，没有注解时采用方法1：<p />
      * 1、类名按驼峰分割变为小写后，用下划线拼接作为表名，字段名与实体字段名一致<p />
-     * 2、由{@link TableName}和{@link ColumnName}指定
+     * 2、由{@link TableName}和{@link ColumnName}指定<p />
+     * 连接由{@link StatementCache#wrap(Connection, int)}包装时复用缓存的PreparedStatement
      * @param connection 数据库连接
      * @param object 要保存的实体对象
      * @throws SQLException SQLException
      */
     public static void insert(Connection connection, Object object) throws SQLException
     {
-        Class<?> clazz = object.getClass();
-        PreparedStatement prepstmt = connection.prepareStatement(buildInsertSQL(clazz));
-        List<Pair<String, Method>> model = getColumnAndGetters(clazz);
-        for (int i = 0; i < model.size(); i++)
+        EntityMapper mapper = EntityMapper.of(object.getClass());
+        String sql = mapper.insertSQL();
+        DBMetrics metrics = DBHelper.metrics;
+        try
         {
-            int k = i;
-            runtime(() -> prepstmt.setObject(k + 1, model.get(k).getValue().invoke(object)));
+            PreparedStatement prepstmt = prepare(connection, sql);
+            try
+            {
+                long start = metrics == DBMetrics.NOOP ? 0 : System.nanoTime();
+                mapper.bind(prepstmt, object);
+                long executeStart = metrics == DBMetrics.NOOP ? 0 : System.nanoTime();
+                prepstmt.execute();
+                if (metrics != DBMetrics.NOOP)
+                {
+                    metrics.onExecute("insert", mapper.entityClass(), mapper.tableName(), 1, executeStart - start,
+                        System.nanoTime() - executeStart);
+                }
+            }
+            finally
+            {
+                release(connection, sql, prepstmt);
+            }
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            metrics.onFailure("insert", mapper.entityClass(), mapper.tableName(), e);
+            throw e;
         }
-        prepstmt.execute();
-        prepstmt.close();
     }
 
     /**
-     * 根据类构建PrepareStatement对应的sql语句
-     * @param clazz 实体类名
-     * @return PrepareStatement形式的sql语句
+     * 分批执行实体对象对应的语句，是分批插入、更新等操作的公共部分
+     * @param operation 操作名，用于记录度量数据
+     * @param connection 数据库连接
+     * @param objects 实体对象
+     * @param batchSize 每批的行数
+     * @param commitInterval 每多少批提交一次，小于等于0时不提交
+     * @param sqlOf 根据实体映射得到要执行的sql
+     * @param binder 将一个实体绑定到语句上
+     * @return 每一批的行数
      */
-    private static String buildInsertSQL(Class<?> clazz)
+    private static <T> int[] executeBatches(String operation, Connection connection, Iterator<T> objects, int batchSize,
+                                            int commitInterval, Function<EntityMapper, String> sqlOf, RowBinder binder)
+        throws SQLException
     {
-        //获得表名和字段信息
-        String tableName = getTableName(clazz);
-        List<Pair<String, Method>> model = getColumnAndGetters(clazz);
-
-        //构建sql语句
-        StringBuilder sb = new StringBuilder("INSERT INTO ").append(tableName).append("(");
-        StringBuilder paras = new StringBuilder();
-        model.forEach(p -> {
-            sb.append(p.getKey()).append(",");
-            paras.append("?,");
-        });
-        sb.setCharAt(sb.length() - 1, ')');
-        sb.append(" VALUES(").append(paras);
-        sb.setCharAt(sb.length() - 1, ')');
-        return sb.toString();
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        if (!objects.hasNext())
+        {
+            return new int[0];
+        }
+        int[] counts = new int[16];
+        int batches = 0;
+        T first = objects.next();
+        EntityMapper mapper = EntityMapper.of(first.getClass());
+        DBMetrics metrics = DBHelper.metrics;
+        boolean timed = metrics != DBMetrics.NOOP;
+        String sql = sqlOf.apply(mapper);
+        try
+        {
+            PreparedStatement prepstmt = prepare(connection, sql);
+            try
+            {
+                //绑定耗时按批统计，包括从输入读取对象的时间，避免每行调用nanoTime
+                long bindStart = timed ? System.nanoTime() : 0;
+                binder.bind(mapper, prepstmt, first);
+                prepstmt.addBatch();
+                int rows = 1;
+                while (true)
+                {
+                    boolean hasNext = objects.hasNext();
+                    if (rows == batchSize || (!hasNext && rows > 0))
+                    {
+                        long executeStart = timed ? System.nanoTime() : 0;
+                        prepstmt.executeBatch();
+                        if (timed)
+                        {
+                            metrics.onExecute(operation, mapper.entityClass(), mapper.tableName(), rows,
+                                executeStart - bindStart, System.nanoTime() - executeStart);
+                        }
+                        if (batches == counts.length)
+                        {
+                            counts = Arrays.copyOf(counts, batches << 1);
+                        }
+                        counts[batches++] = rows;
+                        rows = 0;
+                        if (commitInterval > 0 && (batches % commitInterval == 0 || !hasNext))
+                        {
+                            connection.commit();
+                        }
+                        bindStart = timed ? System.nanoTime() : 0;
+                    }
+                    if (!hasNext)
+                    {
+                        break;
+                    }
+                    binder.bind(mapper, prepstmt, objects.next());
+                    prepstmt.addBatch();
+                    rows++;
+                }
+            }
+            finally
+            {
+                release(connection, sql, prepstmt);
+            }
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            metrics.onFailure(operation, mapper.entityClass(), mapper.tableName(), e);
+            throw e;
+        }
+        return Arrays.copyOf(counts, batches);
+    }
+
+    /**
+     * 将一个实体绑定到语句上
+     */
+    @FunctionalInterface
+    private interface RowBinder
+    {
+        void bind(EntityMapper mapper, PreparedStatement prepstmt, Object entity) throws SQLException;
+    }
+
+    /**
+     * 获取SQL对应的语句，连接带有{@link StatementCache}时从缓存中取
+     */
+    private static PreparedStatement prepare(Connection connection, String sql) throws SQLException
+    {
+        StatementCache cache = StatementCache.of(connection);
+        return cache == null ? connection.prepareStatement(sql) : cache.acquire(sql);
+    }
+
+    /**
+     * 释放{@link #prepare(Connection, String)}得到的语句，连接带有{@link StatementCache}时归还缓存，否则关闭
+     */
+    private static void release(Connection connection, String sql, PreparedStatement prepstmt) throws SQLException
+    {
+        StatementCache cache = StatementCache.of(connection);
+        if (cache == null)
+        {
+            prepstmt.close();
+        }
+        else
+        {
+            cache.release(sql, prepstmt);
+        }
+    }
+
+    /**
+     * 查询并将结果集逐行映射为实体对象，fetchSize为{@link #DEFAULT_FETCH_SIZE}，
+     * 详细说明见{@link #query(Connection, Class, int, String, Object...)}
+     * @param connection 数据库连接
+     * @param clazz 实体类
+     * @param sql 查询语句，参数用?占位
+     * @param params 查询参数
+     * @return 延迟读取的实体流，用完后需要关闭
+     * @throws SQLException SQLException
+     */
+    public static <T> Stream<T> query(Connection connection, Class<T> clazz, String sql, Object... params)
+        throws SQLException
+    {
+        return query(connection, clazz, DEFAULT_FETCH_SIZE, sql, params);
+    }
+
+    /**
+     * <p>查询并将结果集逐行映射为实体对象，返回的流在遍历时才从结果集读取下一行，内存占用与结果集大小无关</p>
+     * <p>结果集的列按列标签忽略大小写匹配实体的列名，列名规则同{@link #batchInsert(Connection, List)}，
+     * {@link ExclusiveColumn}标注的字段和匹配不到的列会被忽略。实体类需要有无参构造器，
+     * 字段有setter时通过setter设值，否则直接写字段</p>
+     * <p>返回的流需要关闭以释放Statement和ResultSet，建议用try-with-resource，流遍历完时也会自动释放</p>
+     * <p>注意：MySQL驱动只有在fetchSize为Integer.MIN_VALUE或者连接设置了useCursorFetch=true时才会流式读取，
+     * PostgreSQL驱动需要在autocommit为false时fetchSize才生效</p>
+     * @param connection 数据库连接
+     * @param clazz 实体类
+     * @param fetchSize 每次从数据库获取的行数
+     * @param sql 查询语句，参数用?占位
+     * @param params 查询参数
+     * @return 延迟读取的实体流，用完后需要关闭
+     * @throws SQLException SQLException
+     */
+    public static <T> Stream<T> query(Connection connection, Class<T> clazz, int fetchSize, String sql, Object... params)
+        throws SQLException
+    {
+        EntityMapper mapper = EntityMapper.of(clazz);
+        PreparedStatement prepstmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ResultSet rs;
+        EntityMapper.ReadPlan plan;
+        try
+        {
+            prepstmt.setFetchSize(fetchSize);
+            for (int i = 0; i < params.length; i++)
+            {
+                prepstmt.setObject(i + 1, params[i]);
+            }
+            rs = prepstmt.executeQuery();
+            plan = mapper.readPlan(rs.getMetaData());
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            prepstmt.close();
+            throw e;
+        }
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL)
+        {
+            private boolean closed;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action)
+            {
+                if (closed)
+                {
+                    return false;
+                }
+                try
+                {
+                    if (!rs.next())
+                    {
+                        closed = true;
+                        rs.close();
+                        prepstmt.close();
+                        return false;
+                    }
+                    action.accept(clazz.cast(plan.read(rs)));
+                    return true;
+                }
+                catch (SQLException e)
+                {
+                    runtime(e);
+                    return false;
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> runtime(() -> {
+            try
+            {
+                rs.close();
+            }
+            finally
+            {
+                prepstmt.close();
+            }
+        }));
     }
 
     /**
@@ -115,9 +684,7 @@ public class DBHelper
      */
     public static void createTable(Connection connection, Class<?> clazz) throws SQLException
     {
-        Statement statement = connection.createStatement();
-        statement.execute(buildTableSQL(clazz));
-        statement.close();
+        createTable(connection, clazz, StandardDialect.MYSQL);
     }
 
     /**
@@ -129,32 +696,117 @@ public class DBHelper
      */
     public static String buildTableSQL(Class<?> clazz) throws SQLException
     {
+        return buildTableSQL(clazz, StandardDialect.MYSQL);
+    }
+
+    /**
+     * <p>根据实体类和数据库方言创建表</p>
+     * <p>表名和字段名的规则同{@link #createTable(Connection, Class)}，标识符的引用方式和自增主键由方言决定</p>
+     * @param connection 数据库连接
+     * @param clazz 实体类
+     * @param dialect 数据库方言
+     * @throws SQLException SQLException
+     */
+    public static void createTable(Connection connection, Class<?> clazz, Dialect dialect) throws SQLException
+    {
+        DBMetrics metrics = DBHelper.metrics;
         String tableName = getTableName(clazz);
-        StringBuilder sb = new StringBuilder();
-        sb.append("CREATE TABLE `").append(tableName).append("`(\n");
-        sb.append("id  bigint(20) NOT NULL AUTO_INCREMENT ,\n");
-        getColumnAndTypes(clazz).forEach(p -> sb.append("`").append(p.getKey()).append("` ").append(p.getValue()).append(" ,\n"));
-        sb.append("PRIMARY KEY (`id`)\n");
-        sb.append(")");
-        return sb.toString();
+        try
+        {
+            long start = metrics == DBMetrics.NOOP ? 0 : System.nanoTime();
+            Statement statement = connection.createStatement();
+            statement.execute(buildTableSQL(clazz, dialect));
+            statement.close();
+            if (metrics != DBMetrics.NOOP)
+            {
+                metrics.onExecute("createTable", clazz, tableName, 0, 0, System.nanoTime() - start);
+            }
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            metrics.onFailure("createTable", clazz, tableName, e);
+            throw e;
+        }
+    }
+
+    /**
+     * <p>根据实体类和数据库方言得到创建表的SQL</p>
+     * <p>表名和字段名的规则同{@link #buildTableSQL(Class)}，标识符的引用方式和自增主键由方言决定。
+     * 编译期生成的{@link TableMetadata}只包含MySQL的建表语句，所以只有MySQL方言会直接使用它</p>
+     * @param clazz 实体类
+     * @param dialect 数据库方言
+     * @return 创建表的SQL
+     */
+    public static String buildTableSQL(Class<?> clazz, Dialect dialect)
+    {
+        if (dialect == StandardDialect.MYSQL)
+        {
+            TableMetadata<?> metadata = Model.getTableMetadata(clazz);
+            if (metadata != null)
+            {
+                return metadata.createTableSQL();
+            }
+        }
+        List<String> columns = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        getColumnAndTypes(clazz).forEach(p -> {
+            columns.add(p.getKey());
+            types.add(p.getValue());
+        });
+        return MappingRules.createTableSQL(dialect, getTableName(clazz), columns, types);
     }
 
     /**
-     * 执行包含多个SQL语句的SQL脚本
+     * 执行包含多个SQL语句的SQL脚本，语句的切分和执行方式见{@link SQLScriptExecutor}
      * @param connection 数据库连接
      * @param script 脚本字符串
      * @throws SQLException SQLException
      */
     public static void executeSQLScript(Connection connection, String script) throws SQLException {
-        Statement statement = connection.createStatement();
-        String[] sqls = script.split(";");
-        for (String sql : sqls) {
-            sql = sql.trim();
-            if (sql.length() > 0) {
-                statement.execute(sql);
+        try {
+            executeSQLScript(connection, new StringReader(script));
+        } catch (IOException e) {
+            //StringReader never throws IOException
+            runtime(e);
+        }
+    }
+
+    /**
+     * 流式执行SQL脚本，逐条读取语句，连续的DML语句合并成批执行，语句的切分和执行方式见{@link SQLScriptExecutor}
+     * @param connection 数据库连接
+     * @param script 脚本输入，不会被关闭
+     * @return 执行的语句数
+     * @throws SQLException SQLException
+     * @throws IOException IOException
+     */
+    public static long executeSQLScript(Connection connection, Reader script) throws SQLException, IOException {
+        DBMetrics metrics = DBHelper.metrics;
+        long start = metrics == DBMetrics.NOOP ? 0 : System.nanoTime();
+        try {
+            long executed = new SQLScriptExecutor().execute(connection, script);
+            if (metrics != DBMetrics.NOOP) {
+                metrics.onExecute("executeSQLScript", null, null, (int) Math.min(executed, Integer.MAX_VALUE), 0,
+                    System.nanoTime() - start);
             }
+            return executed;
+        } catch (SQLException | IOException | RuntimeException e) {
+            metrics.onFailure("executeSQLScript", null, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 用UTF-8编码流式执行SQL脚本文件，语句的切分和执行方式见{@link SQLScriptExecutor}
+     * @param connection 数据库连接
+     * @param script 脚本文件
+     * @return 执行的语句数
+     * @throws SQLException SQLException
+     * @throws IOException IOException
+     */
+    public static long executeSQLScript(Connection connection, Path script) throws SQLException, IOException {
+        try (Reader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            return executeSQLScript(connection, reader);
         }
-        statement.close();
     }
 
 }
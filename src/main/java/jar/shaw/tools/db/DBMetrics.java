@@ -0,0 +1,43 @@
+package jar.shaw.tools.db;
+
+/**
+ * <p>{@link DBHelper}操作的度量监听器，通过{@link DBHelper#setMetrics(DBMetrics)}设置，默认是什么都不做的{@link #NOOP}</p>
+ * <p>回调在执行操作的线程上同步调用，实现需要是线程安全的并且足够快，内置的实现见{@link MetricsRegistry}</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/23</p>
+ */
+public interface DBMetrics
+{
+    /**
+     * 不记录任何数据，设置为该值时DBHelper不会调用System.nanoTime()
+     */
+    DBMetrics NOOP = new DBMetrics()
+    {
+    };
+
+    /**
+     * 一次执行完成，分批操作每执行一次executeBatch回调一次
+     * @param operation 操作名，即DBHelper的方法名，例如batchInsert
+     * @param entityClass 实体类，没有实体时为null
+     * @param tableName 表名，没有实体时为null
+     * @param rows 本次执行绑定的行数，脚本为执行的语句数，建表为0
+     * @param bindNanos 读取输入并绑定参数的耗时，单位纳秒
+     * @param executeNanos 执行的耗时，例如executeBatch，单位纳秒
+     */
+    default void onExecute(String operation, Class<?> entityClass, String tableName, int rows, long bindNanos,
+                           long executeNanos)
+    {
+    }
+
+    /**
+     * 操作失败，异常会继续抛给调用方
+     * @param operation 操作名，即DBHelper的方法名
+     * @param entityClass 实体类，没有实体时为null
+     * @param tableName 表名，没有实体时为null
+     * @param error 异常
+     */
+    default void onFailure(String operation, Class<?> entityClass, String tableName, Exception error)
+    {
+    }
+}
@@ -0,0 +1,115 @@
+package jar.shaw.tools.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static jar.shaw.tools.db.StandardDialect.join;
+import static jar.shaw.tools.db.StandardDialect.nonKeyColumns;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * <p>数据库方言，描述不同数据库在生成SQL时的差异，例如标识符的引用方式和单条语句的绑定参数上限</p>
+ * <p>内置的方言见{@link StandardDialect}，自定义方言实现该接口后，在
+ * META-INF/services/jar.shaw.tools.db.Dialect中注册即可被{@link #of(Connection)}识别</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/5</p>
+ */
+public interface Dialect
+{
+    /**
+     * 判断该方言是否适用于指定的数据库
+     * @param databaseProductName {@link java.sql.DatabaseMetaData#getDatabaseProductName()}的返回值
+     * @return 适用时返回true
+     */
+    boolean supports(String databaseProductName);
+
+    /**
+     * 引用表名或列名，例如MySQL的`name`
+     * @param identifier 表名或列名
+     * @return 引用后的标识符
+     */
+    String quote(String identifier);
+
+    /**
+     * @return 单条语句最多可以绑定的参数个数
+     */
+    int maxBindParameters();
+
+    /**
+     * @return 多行VALUES插入时单条语句最多包含的行数
+     */
+    default int maxRowsPerStatement()
+    {
+        return 1000;
+    }
+
+    /**
+     * 生成的插入语句不绑定id，所以id列必须由数据库自动生成，默认使用标准SQL的标识列
+     * @return 建表时自增主键id列的定义，不含列名
+     */
+    default String idColumnDefinition()
+    {
+        return "bigint GENERATED BY DEFAULT AS IDENTITY";
+    }
+
+    /**
+     * <p>生成按键插入或更新的语句，绑定参数的顺序和columns一致，每列绑定一次</p>
+     * <p>默认生成标准SQL的MERGE语句</p>
+     * @param tableName 表名
+     * @param columns 所有列名
+     * @param keyColumns 键的列名，是columns的子集
+     * @return 插入或更新的语句
+     */
+    default String upsertSQL(String tableName, List<String> columns, List<String> keyColumns)
+    {
+        StringBuilder sb = new StringBuilder("MERGE INTO ").append(quote(tableName)).append(" t USING (SELECT ");
+        sb.append(join(columns, c -> "? AS " + quote(c))).append(") s ON ");
+        sb.append(keyColumns.stream().map(k -> "t." + quote(k) + "=s." + quote(k)).collect(joining(" AND ")));
+        List<String> values = nonKeyColumns(columns, keyColumns);
+        if (!values.isEmpty())
+        {
+            sb.append(" WHEN MATCHED THEN UPDATE SET ").append(join(values, c -> quote(c) + "=s." + quote(c)));
+        }
+        sb.append(" WHEN NOT MATCHED THEN INSERT (").append(join(columns, this::quote)).append(") VALUES (");
+        sb.append(join(columns, c -> "s." + quote(c))).append(")");
+        return sb.toString();
+    }
+
+    /**
+     * <p>生成从CSV文件批量加载数据的语句，不支持时返回null，调用方会回退到分批插入</p>
+     * <p>CSV文件的格式固定为：UTF-8编码，没有标题行，逗号分隔，每行以\n结束，非null的值都用双引号括起来，
+     * 值中的双引号写成两个双引号，null写成不带引号的NULL，布尔值写成"1"和"0"，不能按文本加载布尔列的数据库需要在语句中转换</p>
+     * @param tableName 表名
+     * @param columns 列名，和CSV文件中列的顺序一致
+     * @param types 列对应的字段类型，和columns一一对应
+     * @param file CSV文件的绝对路径，{@link #bulkLoadFromStdin()}为true时不使用
+     * @return 批量加载的语句，不支持时返回null
+     */
+    default String bulkLoadSQL(String tableName, List<String> columns, List<Class<?>> types, String file)
+    {
+        return null;
+    }
+
+    /**
+     * 服务器进程一般不能读取客户端创建的临时文件，例如PostgreSQL的COPY FROM文件，这时语句改为从标准输入读取，
+     * 由调用方通过驱动发送CSV文件的内容
+     * @return {@link #bulkLoadSQL(String, List, List, String)}的语句是否从标准输入读取数据，默认为false
+     */
+    default boolean bulkLoadFromStdin()
+    {
+        return false;
+    }
+
+    /**
+     * 根据连接识别数据库方言，先查找通过ServiceLoader注册的方言，再查找内置方言，都不适用时返回{@link StandardDialect#GENERIC}
+     * @param connection 数据库连接
+     * @return 数据库方言
+     * @throws SQLException SQLException
+     */
+    static Dialect of(Connection connection) throws SQLException
+    {
+        return StandardDialect.detect(connection.getMetaData().getDatabaseProductName());
+    }
+}
@@ -0,0 +1,1098 @@
+package jar.shaw.tools.db;
+
+import javafx.util.Pair;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import static jar.shaw.tools.db.Model.getColumnAndGetters;
+import static jar.shaw.tools.db.Model.getTableName;
+import static jar.shaw.tools.util.Utils.getAnnotation;
+
+/**
+ * <p>实体类到表的映射，每个类只解析一次并缓存在{@link ClassValue}中</p>
+ * <p>映射里预先生成了insert语句和每个字段的访问器、设值器，绑定参数和读取结果集时直接调用getter和setter，不再使用反射</p>
+ * <p>实体类有编译期生成的{@link TableMetadata}时直接使用它，不扫描字段和方法</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/2</p>
+ */
+final class EntityMapper
+{
+
+    private static final ClassValue<EntityMapper> MAPPERS = new ClassValue<EntityMapper>()
+    {
+        @Override
+        protected EntityMapper computeValue(Class<?> type)
+        {
+            return new EntityMapper(type);
+        }
+    };
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<?> entityClass;
+    private final String tableName;
+    private final Column[] columns;
+    private final String insertSQL;
+    private final Map<Dialect, Map<Integer, String>> multiRowInsertSQLs = new ConcurrentHashMap<>();
+    private final Map<String, ReadPlan> readPlans = new ConcurrentHashMap<>();
+    private final Map<Dialect, String> upsertSQLs = new ConcurrentHashMap<>();
+    private final Map<Integer, String> deleteByIdsSQLs = new ConcurrentHashMap<>();
+    private volatile Column[] updateColumns;
+    private volatile String updateSQL;
+    private volatile ColumnBinder keyValueBinder;
+    private volatile Supplier<Object> constructor;
+
+    @SuppressWarnings("unchecked")
+    private EntityMapper(Class<?> clazz)
+    {
+        this.entityClass = clazz;
+        TableMetadata<Object> metadata = (TableMetadata<Object>) Model.getTableMetadata(clazz);
+        if (metadata != null)
+        {
+            this.tableName = metadata.tableName();
+            this.columns = columns(metadata);
+            this.insertSQL = metadata.insertSQL();
+            this.constructor = metadata::newInstance;
+            return;
+        }
+        this.tableName = getTableName(clazz);
+        List<Pair<String, Method>> model = getColumnAndGetters(clazz);
+        Map<String, Method> setters = new HashMap<>();
+        for (Method method : clazz.getMethods())
+        {
+            if (method.getParameterCount() == 1 && method.getName().toLowerCase().startsWith("set"))
+            {
+                setters.put(method.getName().toLowerCase(), method);
+            }
+        }
+        this.columns = new Column[model.size()];
+        for (int i = 0; i < columns.length; i++)
+        {
+            Pair<String, Method> p = model.get(i);
+            Field field = findField(clazz, p.getKey());
+            Method setter = setters.get("set" + field.getName().toLowerCase());
+            Function<Object, Object> getter = accessor(clazz, field, p.getValue());
+            columns[i] = new Column(p.getKey(), field.getType(), getAnnotation(field, KeyColumn.class) != null, getter,
+                binder(clazz, field, p.getValue(), getter), mutator(clazz, field, setter), ColumnReader.of(field.getType()));
+        }
+        this.insertSQL = MappingRules.insertSQL(tableName, columnNames());
+    }
+
+    /**
+     * 用编译期生成的元数据构建列，访问器和参数绑定都直接调用生成的代码，不需要反射
+     */
+    private static Column[] columns(TableMetadata<Object> metadata)
+    {
+        List<String> names = metadata.columnNames();
+        List<Class<?>> types = metadata.columnTypes();
+        Column[] columns = new Column[names.size()];
+        for (int i = 0; i < columns.length; i++)
+        {
+            int column = i;
+            columns[i] = new Column(names.get(i), types.get(i), metadata.isKey(i), o -> metadata.get(o, column),
+                (ps, index, o) -> metadata.bind(ps, index, o, column),
+                metadata.isWritable(i) ? (o, value) -> metadata.set(o, column, value) : null,
+                ColumnReader.of(types.get(i)));
+        }
+        return columns;
+    }
+
+    /**
+     * 获取类对应的映射，第一次调用时解析，之后直接从缓存获取
+     * @param clazz 实体类
+     * @return 实体类的映射
+     */
+    static EntityMapper of(Class<?> clazz)
+    {
+        return MAPPERS.get(clazz);
+    }
+
+    Class<?> entityClass()
+    {
+        return entityClass;
+    }
+
+    String tableName()
+    {
+        return tableName;
+    }
+
+    Column[] columns()
+    {
+        return columns;
+    }
+
+    String insertSQL()
+    {
+        return insertSQL;
+    }
+
+    /**
+     * @return 所有列名，按列顺序
+     */
+    List<String> columnNames()
+    {
+        List<String> names = new ArrayList<>(columns.length);
+        for (Column column : columns)
+        {
+            names.add(column.name);
+        }
+        return names;
+    }
+
+    /**
+     * @return 所有列的字段类型，按列顺序
+     */
+    List<Class<?>> columnTypes()
+    {
+        List<Class<?>> types = new ArrayList<>(columns.length);
+        for (Column column : columns)
+        {
+            types.add(column.type);
+        }
+        return types;
+    }
+
+    /**
+     * @return {@link KeyColumn}标注的列名，按列顺序
+     * @throws IllegalStateException 实体类没有用{@link KeyColumn}标注任何字段
+     */
+    List<String> keyColumnNames()
+    {
+        List<String> names = new ArrayList<>();
+        for (Column column : columns)
+        {
+            if (column.key)
+            {
+                names.add(column.name);
+            }
+        }
+        if (names.isEmpty())
+        {
+            throw new IllegalStateException("no @KeyColumn declared in " + entityClass.getName());
+        }
+        return names;
+    }
+
+    /**
+     * 获取按键插入或更新的语句，绑定参数的顺序和insert语句相同，语句按方言缓存
+     * @param dialect 数据库方言
+     * @return upsert语句
+     */
+    String upsertSQL(Dialect dialect)
+    {
+        return upsertSQLs.computeIfAbsent(dialect, d -> d.upsertSQL(tableName, columnNames(), keyColumnNames()));
+    }
+
+    /**
+     * @return 按键更新其他列的语句，SET的列在前，WHERE的键列在后，绑定顺序见{@link #bindUpdate(PreparedStatement, Object)}
+     * @throws IllegalStateException 实体类没有{@link KeyColumn}或者没有键以外的列
+     */
+    String updateSQL()
+    {
+        String sql = updateSQL;
+        if (sql == null)
+        {
+            List<String> keys = keyColumnNames();
+            List<String> values = new ArrayList<>();
+            for (Column column : updateColumns())
+            {
+                if (!column.key)
+                {
+                    values.add(column.name);
+                }
+            }
+            sql = updateSQL = MappingRules.updateSQL(tableName, values, keys);
+        }
+        return sql;
+    }
+
+    /**
+     * 按{@link #updateSQL()}的参数顺序绑定实体，先绑定键以外的列，再绑定键列
+     * @param prepstmt PreparedStatement
+     * @param entity 实体对象
+     * @throws SQLException SQLException
+     */
+    void bindUpdate(PreparedStatement prepstmt, Object entity) throws SQLException
+    {
+        Column[] columns = updateColumns();
+        for (int i = 0; i < columns.length; i++)
+        {
+            columns[i].binder.bind(prepstmt, i + 1, entity);
+        }
+    }
+
+    private Column[] updateColumns()
+    {
+        Column[] ordered = updateColumns;
+        if (ordered == null)
+        {
+            ordered = new Column[columns.length];
+            int n = 0;
+            for (Column column : columns)
+            {
+                if (!column.key)
+                {
+                    ordered[n++] = column;
+                }
+            }
+            if (n == 0)
+            {
+                throw new IllegalStateException("no column to update in " + entityClass.getName() + " besides @KeyColumn");
+            }
+            if (n == columns.length)
+            {
+                throw new IllegalStateException("no @KeyColumn declared in " + entityClass.getName());
+            }
+            for (Column column : columns)
+            {
+                if (column.key)
+                {
+                    ordered[n++] = column;
+                }
+            }
+            updateColumns = ordered;
+        }
+        return ordered;
+    }
+
+    /**
+     * 获取按键删除多行的语句，语句按键的个数缓存
+     * @param ids 语句中IN列表的键的个数
+     * @return DELETE FROM t WHERE key IN (?,...)形式的语句
+     * @throws IllegalStateException 实体类的{@link KeyColumn}不是恰好一个
+     */
+    String deleteByIdsSQL(int ids)
+    {
+        return deleteByIdsSQLs.computeIfAbsent(ids, n -> MappingRules.deleteByIdsSQL(tableName, singleKeyColumn().name, n));
+    }
+
+    /**
+     * 获取按键删除时绑定键值的方式，按键列的类型选定，和插入时同一列的setXxx方法一致，见{@link #valueBinder(Class)}
+     * @return 参数绑定方式，bind的第三个参数是键值
+     * @throws IllegalStateException 实体类的{@link KeyColumn}不是恰好一个
+     */
+    ColumnBinder keyValueBinder()
+    {
+        ColumnBinder binder = keyValueBinder;
+        if (binder == null)
+        {
+            binder = keyValueBinder = valueBinder(singleKeyColumn().type);
+        }
+        return binder;
+    }
+
+    private Column singleKeyColumn()
+    {
+        List<String> keys = keyColumnNames();
+        if (keys.size() != 1)
+        {
+            throw new IllegalStateException("delete by ids requires exactly one @KeyColumn in " + entityClass.getName()
+                + ", found " + keys);
+        }
+        for (Column column : columns)
+        {
+            if (column.key)
+            {
+                return column;
+            }
+        }
+        throw new IllegalStateException("no @KeyColumn declared in " + entityClass.getName());
+    }
+
+    /**
+     * 根据方言的参数上限计算按键删除时单条语句包含的键的个数，同时不超过{@link Dialect#maxRowsPerStatement()}，
+     * 因为有些数据库限制了IN列表的长度，例如Oracle的1000
+     * @param dialect 数据库方言
+     * @return 单条语句的键的个数，至少为1
+     */
+    static int idsPerStatement(Dialect dialect)
+    {
+        return Math.max(Math.min(dialect.maxBindParameters(), dialect.maxRowsPerStatement()), 1);
+    }
+
+    /**
+     * <p>获取结果集到实体的映射计划，结果集的列按标签忽略大小写匹配实体的列名，
+     * 匹配不到的列和没有设值器的字段会被忽略</p>
+     * <p>映射计划按列标签缓存，同一个查询只在第一次执行时计算</p>
+     * @param metaData 结果集元数据
+     * @return 映射计划
+     * @throws SQLException SQLException
+     */
+    ReadPlan readPlan(ResultSetMetaData metaData) throws SQLException
+    {
+        int count = metaData.getColumnCount();
+        StringBuilder key = new StringBuilder();
+        for (int i = 1; i <= count; i++)
+        {
+            key.append(metaData.getColumnLabel(i)).append(',');
+        }
+        ReadPlan plan = readPlans.get(key.toString());
+        if (plan == null)
+        {
+            Map<String, Column> nameToColumn = new HashMap<>();
+            for (Column column : columns)
+            {
+                if (column.setter != null)
+                {
+                    nameToColumn.put(column.name.toLowerCase(), column);
+                }
+            }
+            List<Column> matched = new ArrayList<>();
+            int[] indexes = new int[count];
+            for (int i = 1; i <= count; i++)
+            {
+                Column column = nameToColumn.get(metaData.getColumnLabel(i).toLowerCase());
+                if (column != null)
+                {
+                    indexes[matched.size()] = i;
+                    matched.add(column);
+                }
+            }
+            Supplier<Object> ctor = constructor;
+            if (ctor == null)
+            {
+                ctor = constructor = constructor(entityClass);
+            }
+            plan = new ReadPlan(ctor, Arrays.copyOf(indexes, matched.size()), matched.toArray(new Column[0]));
+            readPlans.putIfAbsent(key.toString(), plan);
+        }
+        return plan;
+    }
+
+    /**
+     * 将实体的所有字段按列顺序绑定到PreparedStatement上，参数下标从1开始
+     * @param prepstmt PreparedStatement
+     * @param entity 实体对象
+     * @throws SQLException SQLException
+     */
+    void bind(PreparedStatement prepstmt, Object entity) throws SQLException
+    {
+        bind(prepstmt, entity, 0);
+    }
+
+    /**
+     * 将实体的所有字段按列顺序绑定到PreparedStatement上，用于一条语句包含多行的情况
+     * @param prepstmt PreparedStatement
+     * @param entity 实体对象
+     * @param offset 第一列之前已经绑定的参数个数
+     * @throws SQLException SQLException
+     */
+    void bind(PreparedStatement prepstmt, Object entity, int offset) throws SQLException
+    {
+        Column[] columns = this.columns;
+        for (int i = 0; i < columns.length; i++)
+        {
+            columns[i].binder.bind(prepstmt, offset + i + 1, entity);
+        }
+    }
+
+    /**
+     * 根据方言的参数上限，计算多行VALUES插入时单条语句包含的行数
+     * @param dialect 数据库方言
+     * @return 单条语句的行数，至少为1
+     */
+    int rowsPerStatement(Dialect dialect)
+    {
+        int rows = Math.min(dialect.maxRowsPerStatement(), dialect.maxBindParameters() / Math.max(columns.length, 1));
+        return Math.max(rows, 1);
+    }
+
+    /**
+     * 获取包含指定行数的多行VALUES插入语句，语句按方言和行数缓存
+     * @param dialect 数据库方言
+     * @param rows 行数
+     * @return INSERT INTO t(..) VALUES(..),(..)形式的sql语句
+     */
+    String multiRowInsertSQL(Dialect dialect, int rows)
+    {
+        return multiRowInsertSQLs.computeIfAbsent(dialect, d -> new ConcurrentHashMap<>())
+            .computeIfAbsent(rows, r -> buildMultiRowInsertSQL(dialect, r));
+    }
+
+    private String buildMultiRowInsertSQL(Dialect dialect, int rows)
+    {
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(dialect.quote(tableName)).append("(");
+        StringBuilder values = new StringBuilder("(");
+        for (Column column : columns)
+        {
+            sb.append(dialect.quote(column.name)).append(",");
+            values.append("?,");
+        }
+        sb.setCharAt(sb.length() - 1, ')');
+        values.setCharAt(values.length() - 1, ')');
+        sb.append(" VALUES");
+        for (int i = 0; i < rows; i++)
+        {
+            sb.append(i == 0 ? "" : ",").append(values);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 生成字段的访问器，优先用LambdaMetafactory生成直接调用getter的Function，
+     * 当实体类对本类的类加载器不可见或者getter不可访问时，退化为MethodHandle调用，
+     * 没有getter时直接读取字段
+     */
+    private static Function<Object, Object> accessor(Class<?> clazz, Field field, Method getter)
+    {
+        return accessor(clazz, field, getter, Function.class, "apply", Object.class, EntityMapper::handleAccessor);
+    }
+
+    /**
+     * 生成指定函数式接口的字段访问器，规则同{@link #accessor(Class, Field, Method)}，
+     * 用于为基本类型生成ToLongFunction等不装箱的访问器
+     * @param iface 函数式接口
+     * @param sam 函数式接口的方法名
+     * @param returnType 函数式接口方法的返回类型，Object或者基本类型
+     * @param fallback 用MethodHandle实现该接口
+     */
+    @SuppressWarnings("unchecked")
+    private static <F> F accessor(Class<?> clazz, Field field, Method getter, Class<? super F> iface, String sam,
+                                  Class<?> returnType, Function<MethodHandle, F> fallback)
+    {
+        try
+        {
+            if (getter == null)
+            {
+                field.setAccessible(true);
+                return fallback.apply(LOOKUP.unreflectGetter(field));
+            }
+            if (isVisible(clazz) && Modifier.isPublic(getter.getDeclaringClass().getModifiers()))
+            {
+                try
+                {
+                    CallSite site = LambdaMetafactory.metafactory(LOOKUP, sam,
+                        MethodType.methodType(iface),
+                        MethodType.methodType(returnType, Object.class),
+                        LOOKUP.unreflect(getter),
+                        returnType == Object.class
+                            ? MethodType.methodType(getter.getReturnType(), getter.getDeclaringClass()).wrap()
+                            : MethodType.methodType(getter.getReturnType(), getter.getDeclaringClass()));
+                    return (F) site.getTarget().invoke();
+                }
+                catch (Throwable ignore)
+                {
+                    //fall through to MethodHandle
+                }
+            }
+            getter.setAccessible(true);
+            return fallback.apply(LOOKUP.unreflect(getter));
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException("can not access field '" + field.getName() + "' of " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * 生成字段的设值器，规则同{@link #accessor(Class, Field, Method)}，没有setter时直接写字段，
+     * final字段没有设值器，返回null
+     */
+    private static BiConsumer<Object, Object> mutator(Class<?> clazz, Field field, Method setter)
+    {
+        try
+        {
+            if (setter == null)
+            {
+                if (Modifier.isFinal(field.getModifiers()))
+                {
+                    return null;
+                }
+                field.setAccessible(true);
+                return handleMutator(LOOKUP.unreflectSetter(field));
+            }
+            if (isVisible(clazz) && Modifier.isPublic(setter.getDeclaringClass().getModifiers()))
+            {
+                try
+                {
+                    return lambdaMutator(setter);
+                }
+                catch (Throwable ignore)
+                {
+                    //fall through to MethodHandle
+                }
+            }
+            setter.setAccessible(true);
+            return handleMutator(LOOKUP.unreflect(setter));
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new IllegalStateException("can not access field '" + field.getName() + "' of " + clazz.getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> lambdaMutator(Method setter) throws Throwable
+    {
+        MethodHandle target = LOOKUP.unreflect(setter);
+        CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept",
+            MethodType.methodType(BiConsumer.class),
+            MethodType.methodType(void.class, Object.class, Object.class),
+            target,
+            MethodType.methodType(void.class, setter.getDeclaringClass(), setter.getParameterTypes()[0]).wrap()
+                .changeReturnType(void.class));
+        return (BiConsumer<Object, Object>) site.getTarget().invoke();
+    }
+
+    private static BiConsumer<Object, Object> handleMutator(MethodHandle handle)
+    {
+        MethodHandle h = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return (o, v) -> {
+            try
+            {
+                h.invokeExact(o, v);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * 生成无参构造器的调用，实体类没有无参构造器时抛出异常，只在需要从数据库读取实体时才调用
+     */
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> constructor(Class<?> clazz)
+    {
+        try
+        {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            if (isVisible(clazz) && Modifier.isPublic(clazz.getModifiers()) && Modifier.isPublic(constructor.getModifiers()))
+            {
+                try
+                {
+                    CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get",
+                        MethodType.methodType(Supplier.class),
+                        MethodType.methodType(Object.class),
+                        LOOKUP.unreflectConstructor(constructor),
+                        MethodType.methodType(clazz));
+                    return (Supplier<Object>) site.getTarget().invoke();
+                }
+                catch (Throwable ignore)
+                {
+                    //fall through to MethodHandle
+                }
+            }
+            constructor.setAccessible(true);
+            MethodHandle h = LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+            return () -> {
+                try
+                {
+                    return h.invokeExact();
+                }
+                catch (RuntimeException | Error e)
+                {
+                    throw e;
+                }
+                catch (Throwable e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+        catch (NoSuchMethodException | IllegalAccessException e)
+        {
+            throw new IllegalStateException(clazz.getName() + " must have a no-arg constructor to be read from database", e);
+        }
+    }
+
+    private static Function<Object, Object> handleAccessor(MethodHandle handle)
+    {
+        MethodHandle h = handle.asType(MethodType.methodType(Object.class, Object.class));
+        return o -> {
+            try
+            {
+                return h.invokeExact(o);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private static ToLongFunction<Object> handleLongAccessor(MethodHandle handle)
+    {
+        MethodHandle h = handle.asType(MethodType.methodType(long.class, Object.class));
+        return o -> {
+            try
+            {
+                return (long) h.invokeExact(o);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private static ToIntFunction<Object> handleIntAccessor(MethodHandle handle)
+    {
+        MethodHandle h = handle.asType(MethodType.methodType(int.class, Object.class));
+        return o -> {
+            try
+            {
+                return (int) h.invokeExact(o);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private static ToDoubleFunction<Object> handleDoubleAccessor(MethodHandle handle)
+    {
+        MethodHandle h = handle.asType(MethodType.methodType(double.class, Object.class));
+        return o -> {
+            try
+            {
+                return (double) h.invokeExact(o);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private static Predicate<Object> handleBooleanAccessor(MethodHandle handle)
+    {
+        MethodHandle h = handle.asType(MethodType.methodType(boolean.class, Object.class));
+        return o -> {
+            try
+            {
+                return (boolean) h.invokeExact(o);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * 根据字段类型选择参数绑定方式，基本类型通过不装箱的访问器直接调用setLong等方法，
+     * short、byte借用int的访问器，float借用double的访问器，boolean用{@link Predicate}，
+     * 常见的包装类型和引用类型调用对应的setXxx方法，为null时用对应的{@link Types}调用setNull，其他类型用setObject
+     */
+    private static ColumnBinder binder(Class<?> clazz, Field field, Method getter, Function<Object, Object> boxed)
+    {
+        Class<?> type = getter != null ? getter.getReturnType() : field.getType();
+        if (type == long.class)
+        {
+            ToLongFunction<Object> f = accessor(clazz, field, getter, ToLongFunction.class, "applyAsLong", long.class,
+                EntityMapper::handleLongAccessor);
+            return (ps, i, o) -> ps.setLong(i, f.applyAsLong(o));
+        }
+        if (type == int.class)
+        {
+            ToIntFunction<Object> f = accessor(clazz, field, getter, ToIntFunction.class, "applyAsInt", int.class,
+                EntityMapper::handleIntAccessor);
+            return (ps, i, o) -> ps.setInt(i, f.applyAsInt(o));
+        }
+        if (type == double.class)
+        {
+            ToDoubleFunction<Object> f = accessor(clazz, field, getter, ToDoubleFunction.class, "applyAsDouble", double.class,
+                EntityMapper::handleDoubleAccessor);
+            return (ps, i, o) -> ps.setDouble(i, f.applyAsDouble(o));
+        }
+        if (type == float.class)
+        {
+            //float拓宽为double后再收窄，值不变
+            ToDoubleFunction<Object> f = accessor(clazz, field, getter, ToDoubleFunction.class, "applyAsDouble", double.class,
+                EntityMapper::handleDoubleAccessor);
+            return (ps, i, o) -> ps.setFloat(i, (float) f.applyAsDouble(o));
+        }
+        if (type == short.class)
+        {
+            ToIntFunction<Object> f = accessor(clazz, field, getter, ToIntFunction.class, "applyAsInt", int.class,
+                EntityMapper::handleIntAccessor);
+            return (ps, i, o) -> ps.setShort(i, (short) f.applyAsInt(o));
+        }
+        if (type == byte.class)
+        {
+            ToIntFunction<Object> f = accessor(clazz, field, getter, ToIntFunction.class, "applyAsInt", int.class,
+                EntityMapper::handleIntAccessor);
+            return (ps, i, o) -> ps.setByte(i, (byte) f.applyAsInt(o));
+        }
+        if (type == boolean.class)
+        {
+            Predicate<Object> f = accessor(clazz, field, getter, Predicate.class, "test", boolean.class,
+                EntityMapper::handleBooleanAccessor);
+            return (ps, i, o) -> ps.setBoolean(i, f.test(o));
+        }
+        return referenceBinder(type, boxed);
+    }
+
+    /**
+     * 绑定单独给出的列值而不是实体，用于按键删除等场合，基本类型按包装类型选择setXxx方法，
+     * 值的类型和列的类型不一致时（例如long列给出Integer）用setObject交给驱动转换
+     * @param type 列的字段类型
+     * @return 参数绑定方式，bind的第三个参数是列值
+     */
+    static ColumnBinder valueBinder(Class<?> type)
+    {
+        Class<?> wrapped = MethodType.methodType(type).wrap().returnType();
+        ColumnBinder typed = referenceBinder(wrapped, Function.identity());
+        return (ps, i, value) -> {
+            if (value == null || wrapped.isInstance(value))
+            {
+                typed.bind(ps, i, value);
+            }
+            else
+            {
+                ps.setObject(i, value);
+            }
+        };
+    }
+
+    /**
+     * 包装类型和引用类型的参数绑定，boxed从bind的第三个参数中取出要绑定的值
+     */
+    private static ColumnBinder referenceBinder(Class<?> type, Function<Object, Object> boxed)
+    {
+        if (type == String.class)
+        {
+            return EntityMapper.<String>nullable(boxed, Types.VARCHAR, PreparedStatement::setString);
+        }
+        if (type == Long.class)
+        {
+            return EntityMapper.<Long>nullable(boxed, Types.BIGINT, PreparedStatement::setLong);
+        }
+        if (type == Integer.class)
+        {
+            return EntityMapper.<Integer>nullable(boxed, Types.INTEGER, PreparedStatement::setInt);
+        }
+        if (type == Double.class)
+        {
+            return EntityMapper.<Double>nullable(boxed, Types.DOUBLE, PreparedStatement::setDouble);
+        }
+        if (type == Float.class)
+        {
+            return EntityMapper.<Float>nullable(boxed, Types.REAL, PreparedStatement::setFloat);
+        }
+        if (type == Short.class)
+        {
+            return EntityMapper.<Short>nullable(boxed, Types.SMALLINT, PreparedStatement::setShort);
+        }
+        if (type == Byte.class)
+        {
+            return EntityMapper.<Byte>nullable(boxed, Types.TINYINT, PreparedStatement::setByte);
+        }
+        if (type == Boolean.class)
+        {
+            return EntityMapper.<Boolean>nullable(boxed, Types.BOOLEAN, PreparedStatement::setBoolean);
+        }
+        if (type == BigDecimal.class)
+        {
+            return EntityMapper.<BigDecimal>nullable(boxed, Types.DECIMAL, PreparedStatement::setBigDecimal);
+        }
+        if (type == java.sql.Date.class)
+        {
+            return EntityMapper.<java.sql.Date>nullable(boxed, Types.DATE, PreparedStatement::setDate);
+        }
+        if (type == java.sql.Time.class)
+        {
+            return EntityMapper.<java.sql.Time>nullable(boxed, Types.TIME, PreparedStatement::setTime);
+        }
+        if (type == Timestamp.class)
+        {
+            return EntityMapper.<Timestamp>nullable(boxed, Types.TIMESTAMP, PreparedStatement::setTimestamp);
+        }
+        if (type == java.util.Date.class)
+        {
+            return EntityMapper.<java.util.Date>nullable(boxed, Types.TIMESTAMP,
+                (ps, i, v) -> ps.setTimestamp(i, new Timestamp(v.getTime())));
+        }
+        if (type == byte[].class)
+        {
+            return EntityMapper.<byte[]>nullable(boxed, Types.VARBINARY, PreparedStatement::setBytes);
+        }
+        return (ps, i, o) -> ps.setObject(i, boxed.apply(o));
+    }
+
+    /**
+     * 包装类型和引用类型的参数绑定，值为null时用sqlType调用setNull
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> ColumnBinder nullable(Function<Object, Object> boxed, int sqlType, ValueSetter<T> setter)
+    {
+        return (ps, i, o) -> {
+            T value = (T) boxed.apply(o);
+            if (value == null)
+            {
+                ps.setNull(i, sqlType);
+            }
+            else
+            {
+                setter.set(ps, i, value);
+            }
+        };
+    }
+
+    /**
+     * 只有实体类能被本类的类加载器加载到时，才能在本类中生成调用它的lambda类
+     */
+    private static boolean isVisible(Class<?> clazz)
+    {
+        try
+        {
+            return Class.forName(clazz.getName(), false, EntityMapper.class.getClassLoader()) == clazz;
+        }
+        catch (ClassNotFoundException e)
+        {
+            return false;
+        }
+    }
+
+    private static Field findField(Class<?> clazz, String column)
+    {
+        for (Field field : clazz.getDeclaredFields())
+        {
+            ColumnName annotation = getAnnotation(field, ColumnName.class);
+            if (column.equals(annotation != null ? annotation.value() : field.getName()))
+            {
+                return field;
+            }
+        }
+        throw new IllegalStateException("field of column '" + column + "' not found in " + clazz.getName());
+    }
+
+    /**
+     * 表的一列，包括列名、字段类型、取值的访问器、参数绑定方式、设值器和从ResultSet读取该列的方法
+     */
+    static final class Column
+    {
+        final String name;
+        final Class<?> type;
+        final boolean key;
+        final Function<Object, Object> getter;
+        final ColumnBinder binder;
+        final BiConsumer<Object, Object> setter;
+        final ColumnReader reader;
+
+        Column(String name, Class<?> type, boolean key, Function<Object, Object> getter, ColumnBinder binder,
+               BiConsumer<Object, Object> setter, ColumnReader reader)
+        {
+            this.name = name;
+            this.type = type;
+            this.key = key;
+            this.getter = getter;
+            this.binder = binder;
+            this.setter = setter;
+            this.reader = reader;
+        }
+    }
+
+    /**
+     * 将实体的一列绑定到PreparedStatement上，在构建映射时按字段类型选定，见{@link #binder(Class, Field, Method, Function)}
+     */
+    @FunctionalInterface
+    interface ColumnBinder
+    {
+        void bind(PreparedStatement prepstmt, int index, Object entity) throws SQLException;
+    }
+
+    /**
+     * 调用PreparedStatement的setXxx方法设置一个非null的值
+     */
+    @FunctionalInterface
+    interface ValueSetter<T>
+    {
+        void set(PreparedStatement prepstmt, int index, T value) throws SQLException;
+    }
+
+    /**
+     * 从ResultSet中读取一列的值，按字段类型选择对应的getXxx方法，避免getObject返回的类型和字段类型不一致
+     */
+    @FunctionalInterface
+    interface ColumnReader
+    {
+        Object read(ResultSet rs, int index) throws SQLException;
+
+        static ColumnReader of(Class<?> type)
+        {
+            if (type == String.class)
+            {
+                return ResultSet::getString;
+            }
+            if (type == long.class)
+            {
+                return ResultSet::getLong;
+            }
+            if (type == int.class)
+            {
+                return ResultSet::getInt;
+            }
+            if (type == double.class)
+            {
+                return ResultSet::getDouble;
+            }
+            if (type == float.class)
+            {
+                return ResultSet::getFloat;
+            }
+            if (type == short.class)
+            {
+                return ResultSet::getShort;
+            }
+            if (type == byte.class)
+            {
+                return ResultSet::getByte;
+            }
+            if (type == boolean.class)
+            {
+                return ResultSet::getBoolean;
+            }
+            if (type == Long.class)
+            {
+                return (rs, i) -> nullable(rs, rs.getLong(i));
+            }
+            if (type == Integer.class)
+            {
+                return (rs, i) -> nullable(rs, rs.getInt(i));
+            }
+            if (type == Double.class)
+            {
+                return (rs, i) -> nullable(rs, rs.getDouble(i));
+            }
+            if (type == Float.class)
+            {
+                return (rs, i) -> nullable(rs, rs.getFloat(i));
+            }
+            if (type == Short.class)
+            {
+                return (rs, i) -> nullable(rs, rs.getShort(i));
+            }
+            if (type == Byte.class)
+            {
+                return (rs, i) -> nullable(rs, rs.getByte(i));
+            }
+            if (type == Boolean.class)
+            {
+                return (rs, i) -> nullable(rs, rs.getBoolean(i));
+            }
+            if (type == BigDecimal.class)
+            {
+                return ResultSet::getBigDecimal;
+            }
+            if (type == java.sql.Date.class)
+            {
+                return ResultSet::getDate;
+            }
+            if (type == java.sql.Time.class)
+            {
+                return ResultSet::getTime;
+            }
+            if (type == java.sql.Timestamp.class || type == java.util.Date.class)
+            {
+                return ResultSet::getTimestamp;
+            }
+            if (type == byte[].class)
+            {
+                return ResultSet::getBytes;
+            }
+            return (rs, i) -> rs.getObject(i, type);
+        }
+
+        static Object nullable(ResultSet rs, Object value) throws SQLException
+        {
+            return rs.wasNull() ? null : value;
+        }
+    }
+
+    /**
+     * 结果集列到实体字段的映射计划，按结果集的列标签缓存，每行只需按下标读取并调用设值器
+     */
+    static final class ReadPlan
+    {
+        private final Supplier<Object> constructor;
+        private final int[] indexes;
+        private final Column[] columns;
+
+        ReadPlan(Supplier<Object> constructor, int[] indexes, Column[] columns)
+        {
+            this.constructor = constructor;
+            this.indexes = indexes;
+            this.columns = columns;
+        }
+
+        /**
+         * 将结果集当前行读成实体对象
+         * @param rs 结果集
+         * @return 实体对象
+         * @throws SQLException SQLException
+         */
+        Object read(ResultSet rs) throws SQLException
+        {
+            Object entity = constructor.get();
+            int[] indexes = this.indexes;
+            Column[] columns = this.columns;
+            for (int i = 0; i < indexes.length; i++)
+            {
+                Object value = columns[i].reader.read(rs, indexes[i]);
+                if (value != null || !columns[i].type.isPrimitive())
+                {
+                    columns[i].setter.accept(entity, value);
+                }
+            }
+            return entity;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package jar.shaw.tools.db;
+
+import jar.shaw.tools.io.ExcelEventReader;
+import jar.shaw.tools.io.ExcelHelper;
+import jar.shaw.tools.lambda.ThrowableSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>边解析边写入的Excel导入，调用线程用{@link ExcelEventReader}逐行解析，每batchSize个对象组成一批放入有界队列，
+ * 由多个写入线程取出后用{@link DBHelper#batchInsert(Connection, java.util.Iterator, int, int)}插入，
+ * 解析和写入同时进行，内存中最多只有队列中的几批对象，与文件大小无关</p>
+ * <p>实体类同时用{@link ExcelHelper.ExcelTitle}指定读取的列，用{@link TableName}和{@link ColumnName}指定写入的表和列，
+ * 两套映射互不影响。每个写入线程使用一个连接，每批在一个事务中提交。
+ * 某一批写入失败时回滚该批并停止解析，其他线程不再写入新的批次，已经提交的批次不受影响，结果见{@link ImportResult}</p>
+ * 例如：
+ * <pre>
+ *     ImportResult result = new ExcelImporter(dataSource, 4).batchSize(2000).load(Order.class, path);
+ *     log.info(result.getParseRowsPerSecond() + " " + result.getWriteRowsPerSecond());
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/30</p>
+ */
+public class ExcelImporter
+{
+    private static Logger log = LoggerFactory.getLogger(ExcelImporter.class);
+
+    /**
+     * 队列满或空时的等待间隔，每次等待后检查是否已失败或解析结束
+     */
+    private static final long POLL_MILLIS = 100;
+
+    private final ThrowableSupplier<Connection> connectionSupplier;
+    private final int writers;
+    private int batchSize = 1000;
+    private int queueCapacity = 16;
+
+    /**
+     * 创建导入器
+     * @param dataSource 数据源，每个写入线程从中获取一个连接，导入结束后关闭
+     * @param writers 写入线程数，即同时使用的连接数
+     */
+    public ExcelImporter(DataSource dataSource, int writers)
+    {
+        this(dataSource::getConnection, writers);
+    }
+
+    /**
+     * 创建导入器
+     * @param connectionSupplier 连接提供者，每个写入线程从中获取一个连接，导入结束后关闭
+     * @param writers 写入线程数，即同时使用的连接数
+     */
+    public ExcelImporter(ThrowableSupplier<Connection> connectionSupplier, int writers)
+    {
+        if (writers <= 0)
+        {
+            throw new IllegalArgumentException("writers must be positive: " + writers);
+        }
+        this.connectionSupplier = connectionSupplier;
+        this.writers = writers;
+    }
+
+    /**
+     * 设置每批的行数，一批在一个事务中提交，默认1000
+     * @param batchSize 每批的行数
+     * @return ExcelImporter本身
+     */
+    public ExcelImporter batchSize(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 设置队列中最多等待写入的批数，默认16，队列满时解析线程等待
+     * @param queueCapacity 队列容量，单位为批
+     * @return ExcelImporter本身
+     */
+    public ExcelImporter queueCapacity(int queueCapacity)
+    {
+        if (queueCapacity <= 0)
+        {
+            throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * 导入Excel的第一个sheet
+     * @param clazz 实体类型
+     * @param path excel文件对应的Path，只支持xls和xlsx
+     * @return 导入结果
+     */
+    public <T> ImportResult load(Class<T> clazz, Path path)
+    {
+        return load(new ExcelEventReader<>(clazz), path);
+    }
+
+    /**
+     * 用指定的读取器导入Excel的第一个sheet，可以通过读取器的offset和limit只导入一部分行，方法在所有批次结束后返回
+     * @param reader Excel读取器
+     * @param path excel文件对应的Path，只支持xls和xlsx
+     * @return 导入结果
+     */
+    public <T> ImportResult load(ExcelEventReader<T> reader, Path path)
+    {
+        long start = System.nanoTime();
+        Pipeline pipeline = new Pipeline();
+        Thread[] threads = new Thread[writers];
+        for (int i = 0; i < writers; i++)
+        {
+            threads[i] = new Thread(pipeline::write, "excel-import-writer-" + (i + 1));
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        try
+        {
+            reader.read(path, pipeline::add);
+            pipeline.flushBatch();
+        }
+        catch (Aborted e)
+        {
+            //写入失败，停止解析
+        }
+        catch (Exception e)
+        {
+            //包括ExcelEventReader绕过编译检查抛出的IOException等受检异常
+            log.error("failed to parse excel " + path + ": " + e.getLocalizedMessage(), e);
+            pipeline.fail(e);
+        }
+        finally
+        {
+            pipeline.parsing = false;
+        }
+        long parseEnd = System.nanoTime();
+        try
+        {
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            pipeline.fail(e);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("excel import interrupted", e);
+        }
+        ImportResult result = new ImportResult(pipeline.parsedRows, pipeline.writtenRows.get(),
+            pipeline.failedRows.get(), writers, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+            TimeUnit.NANOSECONDS.toMillis(parseEnd - start - pipeline.parseBlockedNanos),
+            TimeUnit.NANOSECONDS.toMillis(pipeline.parseBlockedNanos),
+            TimeUnit.NANOSECONDS.toMillis(pipeline.writeNanos.get()),
+            TimeUnit.NANOSECONDS.toMillis(pipeline.writeIdleNanos.get()), pipeline.error.get());
+        log.info("excel import finished: " + path + " " + result);
+        return result;
+    }
+
+    /**
+     * 一次导入的队列和计数，parsedRows、parseBlockedNanos和batch只在解析线程中访问
+     */
+    private final class Pipeline
+    {
+        private final BlockingQueue<List<Object>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicReference<Exception> error = new AtomicReference<>();
+        private volatile boolean parsing = true;
+        private List<Object> batch = new ArrayList<>(batchSize);
+        private long parsedRows;
+        private long parseBlockedNanos;
+        private final AtomicLong writtenRows = new AtomicLong();
+        private final AtomicLong failedRows = new AtomicLong();
+        private final AtomicLong writeNanos = new AtomicLong();
+        private final AtomicLong writeIdleNanos = new AtomicLong();
+
+        void add(Object entity)
+        {
+            batch.add(entity);
+            parsedRows++;
+            if (batch.size() == batchSize)
+            {
+                flushBatch();
+            }
+        }
+
+        /**
+         * 把当前批次放入队列，队列满时等待，等待期间写入失败则放弃
+         */
+        void flushBatch()
+        {
+            if (batch.isEmpty())
+            {
+                return;
+            }
+            long start = System.nanoTime();
+            try
+            {
+                while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                {
+                    if (error.get() != null)
+                    {
+                        throw new Aborted();
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                fail(e);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("excel import interrupted", e);
+            }
+            finally
+            {
+                parseBlockedNanos += System.nanoTime() - start;
+            }
+            batch = new ArrayList<>(batchSize);
+            if (error.get() != null)
+            {
+                throw new Aborted();
+            }
+        }
+
+        void fail(Exception e)
+        {
+            error.compareAndSet(null, e);
+        }
+
+        /**
+         * 写入线程，解析结束并且队列为空，或者已经失败时退出
+         */
+        void write()
+        {
+            Connection connection = null;
+            try
+            {
+                connection = connectionSupplier.get();
+                connection.setAutoCommit(false);
+                while (error.get() == null)
+                {
+                    long idleStart = System.nanoTime();
+                    List<Object> objects = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    long writeStart = System.nanoTime();
+                    writeIdleNanos.addAndGet(writeStart - idleStart);
+                    if (objects == null)
+                    {
+                        //parsing在最后一批入队之后才置为false
+                        if (!parsing && queue.isEmpty())
+                        {
+                            break;
+                        }
+                        continue;
+                    }
+                    insert(connection, objects);
+                    writeNanos.addAndGet(System.nanoTime() - writeStart);
+                }
+            }
+            catch (Exception e)
+            {
+                log.error("excel import writer failed: " + e.getLocalizedMessage(), e);
+                fail(e);
+            }
+            finally
+            {
+                if (connection != null)
+                {
+                    try
+                    {
+                        connection.close();
+                    }
+                    catch (Exception e)
+                    {
+                        log.warn("failed to close connection", e);
+                    }
+                }
+            }
+        }
+
+        private void insert(Connection connection, List<Object> objects) throws Exception
+        {
+            try
+            {
+                DBHelper.batchInsert(connection, objects.iterator(), batchSize, 0);
+                connection.commit();
+                writtenRows.addAndGet(objects.size());
+            }
+            catch (Exception e)
+            {
+                failedRows.addAndGet(objects.size());
+                try
+                {
+                    connection.rollback();
+                }
+                catch (Exception rollbackError)
+                {
+                    e.addSuppressed(rollbackError);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 写入失败后停止解析，不需要堆栈
+     */
+    private static final class Aborted extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        Aborted()
+        {
+            super(null, null, false, false);
+        }
+    }
+}
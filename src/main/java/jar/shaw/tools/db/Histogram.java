@@ -0,0 +1,145 @@
+package jar.shaw.tools.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>无锁的以2为底的对数直方图，第i个桶记录[2^(i-1), 2^i)范围内的值，第0个桶记录0</p>
+ * <p>记录一个值只需要几次原子操作，没有锁也不分配内存，百分位数的误差在2倍以内，适合在生产环境常开</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/23</p>
+ */
+public class Histogram
+{
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值，负数按0记录
+     * @param value 值
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+        {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value))
+        {
+            //retry
+        }
+    }
+
+    private static int bucket(long value)
+    {
+        return Math.min(BUCKETS - Long.numberOfLeadingZeros(value), BUCKETS - 1);
+    }
+
+    /**
+     * @return 记录的值的个数
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * @return 记录的值的总和
+     */
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    /**
+     * @return 记录的最大值
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * @return 平均值，没有记录时为0
+     */
+    public double getMean()
+    {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * 估算百分位数，返回该百分位数所在桶的上界，不超过最大值
+     * @param percentile 百分位，0到100之间，例如99
+     * @return 百分位数的估计值，没有记录时为0
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] snapshot = getBuckets();
+        long total = 0;
+        for (long n : snapshot)
+        {
+            total += n;
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0)
+            {
+                long upper = i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.min(upper, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return 每个桶的计数的快照，下标i对应[2^(i-1), 2^i)
+     */
+    public long[] getBuckets()
+    {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = buckets.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 清空所有记录，和并发的record之间不保证原子性
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount() + ", mean=" + String.format("%.1f", getMean()) + ", p50=" + getPercentile(50)
+            + ", p99=" + getPercentile(99) + ", max=" + getMax();
+    }
+}
@@ -0,0 +1,170 @@
+package jar.shaw.tools.db;
+
+/**
+ * <p>{@link ExcelImporter}的导入结果，分别给出解析和写入两个阶段的耗时和吞吐量</p>
+ * <p>解析线程等待队列空位的时间长，说明写入跟不上解析，瓶颈在数据库；写入线程等待批次的时间长，说明瓶颈在解析</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/30</p>
+ */
+public class ImportResult
+{
+    private final long parsedRows;
+    private final long writtenRows;
+    private final long failedRows;
+    private final int writers;
+    private final long elapsedMillis;
+    private final long parseMillis;
+    private final long parseBlockedMillis;
+    private final long writeMillis;
+    private final long writeIdleMillis;
+    private final Exception error;
+
+    ImportResult(long parsedRows, long writtenRows, long failedRows, int writers, long elapsedMillis, long parseMillis,
+        long parseBlockedMillis, long writeMillis, long writeIdleMillis, Exception error)
+    {
+        this.parsedRows = parsedRows;
+        this.writtenRows = writtenRows;
+        this.failedRows = failedRows;
+        this.writers = writers;
+        this.elapsedMillis = elapsedMillis;
+        this.parseMillis = parseMillis;
+        this.parseBlockedMillis = parseBlockedMillis;
+        this.writeMillis = writeMillis;
+        this.writeIdleMillis = writeIdleMillis;
+        this.error = error;
+    }
+
+    /**
+     * @return 解析出的行数
+     */
+    public long getParsedRows()
+    {
+        return parsedRows;
+    }
+
+    /**
+     * @return 已提交的行数
+     */
+    public long getWrittenRows()
+    {
+        return writtenRows;
+    }
+
+    /**
+     * @return 写入失败并回滚的行数
+     */
+    public long getFailedRows()
+    {
+        return failedRows;
+    }
+
+    /**
+     * @return 写入线程数
+     */
+    public int getWriters()
+    {
+        return writers;
+    }
+
+    /**
+     * @return 整个导入的耗时，单位毫秒
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return 解析线程实际解析的时间，不包括等待队列空位的时间，单位毫秒
+     */
+    public long getParseMillis()
+    {
+        return parseMillis;
+    }
+
+    /**
+     * @return 解析线程等待队列空位的时间，单位毫秒
+     */
+    public long getParseBlockedMillis()
+    {
+        return parseBlockedMillis;
+    }
+
+    /**
+     * @return 所有写入线程执行插入和提交的时间之和，单位毫秒
+     */
+    public long getWriteMillis()
+    {
+        return writeMillis;
+    }
+
+    /**
+     * @return 所有写入线程等待批次的时间之和，单位毫秒
+     */
+    public long getWriteIdleMillis()
+    {
+        return writeIdleMillis;
+    }
+
+    /**
+     * @return 解析阶段的吞吐量，解析行数除以实际解析时间，单位行/秒
+     */
+    public double getParseRowsPerSecond()
+    {
+        return parseMillis == 0 ? parsedRows * 1000.0 : parsedRows * 1000.0 / parseMillis;
+    }
+
+    /**
+     * @return 写入阶段的吞吐量，所有写入线程同时工作时每秒能提交的行数，单位行/秒
+     */
+    public double getWriteRowsPerSecond()
+    {
+        double millisPerWriter = (double) writeMillis / writers;
+        return millisPerWriter == 0 ? writtenRows * 1000.0 : writtenRows * 1000.0 / millisPerWriter;
+    }
+
+    /**
+     * @return 端到端的吞吐量，提交行数除以总耗时，单位行/秒
+     */
+    public double getRowsPerSecond()
+    {
+        return elapsedMillis == 0 ? writtenRows * 1000.0 : writtenRows * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * @return 解析等待写入的时间多于写入线程平均等待解析的时间时返回true，即瓶颈在数据库
+     */
+    public boolean isWriteBound()
+    {
+        return parseBlockedMillis * writers > writeIdleMillis;
+    }
+
+    /**
+     * @return 是否全部成功
+     */
+    public boolean isSuccess()
+    {
+        return error == null;
+    }
+
+    /**
+     * @return 导致导入停止的第一个异常，可能来自解析或写入，成功时为null
+     */
+    public Exception getError()
+    {
+        return error;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ImportResult{parsedRows=" + parsedRows + ", writtenRows=" + writtenRows + ", failedRows=" + failedRows
+            + ", writers=" + writers + ", elapsedMillis=" + elapsedMillis
+            + ", parse=" + parseMillis + "ms/" + String.format("%.1f", getParseRowsPerSecond()) + " rows/s"
+            + ", parseBlockedMillis=" + parseBlockedMillis
+            + ", write=" + writeMillis + "ms/" + String.format("%.1f", getWriteRowsPerSecond()) + " rows/s"
+            + ", writeIdleMillis=" + writeIdleMillis + ", bottleneck=" + (isWriteBound() ? "write" : "parse")
+            + (error == null ? "" : ", error=" + error) + "}";
+    }
+}
@@ -0,0 +1,18 @@
+package jar.shaw.tools.db;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标志该字段是表的唯一键（主键或唯一索引）的一部分，用于upsert等需要按键定位行的操作
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/11</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+public @interface KeyColumn
+{
+}
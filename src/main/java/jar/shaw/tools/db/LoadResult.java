@@ -0,0 +1,185 @@
+package jar.shaw.tools.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量导入的结果，包括每个分块的提交或回滚情况，以及总的吞吐量
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/4</p>
+ */
+public class LoadResult
+{
+    private final List<Chunk> chunks;
+    private final long elapsedMillis;
+    private final Exception sourceError;
+
+    LoadResult(List<Chunk> chunks, long elapsedMillis, Exception sourceError)
+    {
+        List<Chunk> sorted = new ArrayList<>(chunks);
+        sorted.sort((a, b) -> Integer.compare(a.index, b.index));
+        this.chunks = Collections.unmodifiableList(sorted);
+        this.elapsedMillis = elapsedMillis;
+        this.sourceError = sourceError;
+    }
+
+    /**
+     * @return 按分块序号排序的每个分块的结果
+     */
+    public List<Chunk> getChunks()
+    {
+        return chunks;
+    }
+
+    /**
+     * @return 所有已提交的分块的行数
+     */
+    public long getRows()
+    {
+        long rows = 0;
+        for (Chunk chunk : chunks)
+        {
+            if (chunk.committed)
+            {
+                rows += chunk.rows;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return 整个导入耗时，单位毫秒
+     */
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return 已提交行数除以总耗时得到的吞吐量，单位行/秒
+     */
+    public double getRowsPerSecond()
+    {
+        return elapsedMillis == 0 ? getRows() * 1000.0 : getRows() * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * @return 输入读取完毕并且所有分块都提交成功时返回true
+     */
+    public boolean isSuccess()
+    {
+        if (sourceError != null)
+        {
+            return false;
+        }
+        for (Chunk chunk : chunks)
+        {
+            if (!chunk.committed)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 读取输入时抛出的异常，此时导入提前结束，已经提交的分块仍在{@link #getChunks()}中，
+     * 正在读取的那个不完整的分块没有插入。输入读取完毕时为null
+     */
+    public Exception getSourceError()
+    {
+        return sourceError;
+    }
+
+    /**
+     * @return 失败的分块
+     */
+    public List<Chunk> getFailures()
+    {
+        List<Chunk> failures = new ArrayList<>();
+        for (Chunk chunk : chunks)
+        {
+            if (!chunk.committed)
+            {
+                failures.add(chunk);
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LoadResult{chunks=" + chunks.size() + ", rows=" + getRows() + ", elapsedMillis=" + elapsedMillis
+            + ", rowsPerSecond=" + String.format("%.1f", getRowsPerSecond()) + ", failures=" + getFailures().size() + (sourceError == null ? "" : ", sourceError=" + sourceError) + "}";
+    }
+
+    /**
+     * 一个分块的结果，一个分块在一个事务中插入，要么全部提交要么全部回滚
+     */
+    public static class Chunk
+    {
+        private final int index;
+        private final int rows;
+        private final boolean committed;
+        private final long elapsedMillis;
+        private final Exception error;
+
+        Chunk(int index, int rows, boolean committed, long elapsedMillis, Exception error)
+        {
+            this.index = index;
+            this.rows = rows;
+            this.committed = committed;
+            this.elapsedMillis = elapsedMillis;
+            this.error = error;
+        }
+
+        /**
+         * @return 分块序号，从0开始，按输入顺序编号
+         */
+        public int getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * @return 分块的行数
+         */
+        public int getRows()
+        {
+            return rows;
+        }
+
+        /**
+         * @return 分块是否已提交，false表示已回滚
+         */
+        public boolean isCommitted()
+        {
+            return committed;
+        }
+
+        /**
+         * @return 分块插入耗时，单位毫秒
+         */
+        public long getElapsedMillis()
+        {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return 导致回滚的异常，提交成功时为null
+         */
+        public Exception getError()
+        {
+            return error;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Chunk{index=" + index + ", rows=" + rows + ", " + (committed ? "committed" : "rolled back: " + error) + "}";
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package jar.shaw.tools.db;
+
+import jar.shaw.tools.util.MapBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * <p>类到表的命名和类型映射规则，以及由列生成的insert和建表语句</p>
+ * <p>运行时的{@link Model}和编译期的{@link TableMetadataProcessor}都使用这里的规则，保证生成的元数据和反射得到的一致，
+ * 所以这里只能依赖类名字符串，不能依赖Class对象</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/25</p>
+ */
+final class MappingRules
+{
+    /**
+     * 字段类型的类名（{@link Class#getName()}）到SQL类型的映射
+     */
+    private static Map<String, String> java2sqlTypeMaping = new MapBuilder()
+        .put("java.lang.String", "varchar(255)")
+        .put("java.lang.Long", "bigint")
+        .put("java.lang.Integer", "int")
+        .put("java.lang.Short", "smallint")
+        .put("java.lang.Byte", "tinyint")
+        .put("java.lang.Boolean", "bit")
+        .put("java.lang.Double", "double")
+        .put("java.lang.Float", "float")
+        .put("long", "bigint")
+        .put("int", "int")
+        .put("short", "smallint")
+        .put("byte", "tinyint")
+        .put("boolean", "bit")
+        .put("double", "double")
+        .put("float", "float")
+        .put("java.math.BigDecimal", "decimal(20,6)")
+        .put("java.sql.Date", "date")
+        .put("java.sql.Timestamp", "datetime")
+        .put("java.util.Date", "datetime")
+        .build();
+
+    private MappingRules()
+    {
+    }
+
+    /**
+     * @param className 字段类型的类名，格式同{@link Class#getName()}
+     * @return 对应的SQL类型，没有对应的类型时返回null
+     */
+    static String sqlType(String className)
+    {
+        return java2sqlTypeMaping.get(className);
+    }
+
+    /**
+     * 类名按驼峰分割变为小写后，用下划线拼接作为表名，连续的大写字母作为一个缩写，例如HTTPRequestLog对应http_request_log
+     * @param simpleName 类的简单名
+     * @return 表名
+     */
+    static String tableName(String simpleName)
+    {
+        List<String> tokens = new ArrayList<>();
+        String className = simpleName;
+        StringBuilder sb = new StringBuilder();
+        int len = className.length();
+        for (int i = 0; i < len; i++)
+        {
+            int c = className.charAt(i);
+            if (isNotCapital(c))
+            {
+                sb.append((char)c);
+            }
+            else
+            {
+                if (sb.length() > 0)
+                {
+                    //the last token ended
+                    tokens.add(sb.toString());
+                    sb.delete(0, sb.length());
+                }
+                sb.append((char)(c + 'a' - 'A'));
+                //find the next non Capital letter
+                int nextNonCapitalIndex = -1;
+                for (int j = i + 1; j < className.length(); j++)
+                {
+                    if (isNotCapital(className.charAt(j)))
+                    {
+                        nextNonCapitalIndex = j;
+                        break;
+                    }
+                }
+
+                //if this capital is the begin of a abbreviation
+                //nextNonCapitalIndex == -1 indicate capital extends to the end
+                if (nextNonCapitalIndex - i > 1 || nextNonCapitalIndex == -1)
+                {
+                    //k is the abbreviation end index
+                    int k = nextNonCapitalIndex == -1 ?  len - 1 : nextNonCapitalIndex - 2;
+                    for (int j = i + 1; j <= k; j++)
+                    {
+                        sb.append((char)(className.charAt(j) + 'a' - 'A'));
+                    }
+                    tokens.add(sb.toString());
+                    sb.delete(0, sb.length());
+                    i = k;
+                }
+            }
+        }
+        if (sb.length() > 0)
+        {
+            tokens.add(sb.toString());
+        }
+        return tokens.stream().collect(joining("_"));
+    }
+
+    private static boolean isNotCapital(int c)
+    {
+        return c < 'A' || c > 'Z';
+    }
+
+    /**
+     * @return 不引用标识符的单行insert语句
+     */
+    static String insertSQL(String tableName, List<String> columns)
+    {
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(tableName).append("(");
+        StringBuilder paras = new StringBuilder();
+        for (String column : columns)
+        {
+            sb.append(column).append(",");
+            paras.append("?,");
+        }
+        sb.setCharAt(sb.length() - 1, ')');
+        sb.append(" VALUES(").append(paras);
+        sb.setCharAt(sb.length() - 1, ')');
+        return sb.toString();
+    }
+
+    /**
+     * @return 不引用标识符的按键更新语句，例如UPDATE t SET a=?,b=? WHERE id=?
+     */
+    static String updateSQL(String tableName, List<String> columns, List<String> keyColumns)
+    {
+        StringBuilder sb = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+        for (int i = 0; i < columns.size(); i++)
+        {
+            sb.append(i == 0 ? "" : ",").append(columns.get(i)).append("=?");
+        }
+        sb.append(" WHERE ");
+        for (int i = 0; i < keyColumns.size(); i++)
+        {
+            sb.append(i == 0 ? "" : " AND ").append(keyColumns.get(i)).append("=?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return 不引用标识符的按键删除语句，例如DELETE FROM t WHERE id IN (?,?,?)
+     */
+    static String deleteByIdsSQL(String tableName, String keyColumn, int ids)
+    {
+        StringBuilder sb = new StringBuilder("DELETE FROM ").append(tableName).append(" WHERE ").append(keyColumn)
+            .append(" IN (");
+        for (int i = 0; i < ids; i++)
+        {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.append(")").toString();
+    }
+
+    /**
+     * @param dialect 数据库方言，决定标识符的引用方式和自增主键
+     * @param tableName 表名
+     * @param columns 列名
+     * @param types 列的SQL类型，和columns一一对应
+     * @return 带自增主键id的建表语句
+     */
+    static String createTableSQL(Dialect dialect, String tableName, List<String> columns, List<String> types)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("CREATE TABLE ").append(dialect.quote(tableName)).append("(\n");
+        sb.append("id  ").append(dialect.idColumnDefinition()).append(" ,\n");
+        for (int i = 0; i < columns.size(); i++)
+        {
+            sb.append(dialect.quote(columns.get(i))).append(" ").append(types.get(i)).append(" ,\n");
+        }
+        sb.append("PRIMARY KEY (").append(dialect.quote("id")).append(")\n");
+        sb.append(")");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,224 @@
+package jar.shaw.tools.db;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>按操作、实体类和表名汇总{@link DBHelper}度量数据的注册表，数据保存在无锁的{@link Histogram}和计数器中，
+ * 可以随时读取，例如定时输出到日志或监控系统</p>
+ * 例如：
+ * <pre>
+ *     MetricsRegistry registry = new MetricsRegistry();
+ *     DBHelper.setMetrics(registry);
+ *     ...
+ *     for (MetricsRegistry.OperationMetrics m : registry.getOperations())
+ *     {
+ *         log.info(m.toString());
+ *     }
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/23</p>
+ */
+public class MetricsRegistry implements DBMetrics
+{
+    /**
+     * ConcurrentHashMap不能用null作键，没有实体类和表名时分别用这两个值代替，void.class不会是实体类，表名不会是空串
+     */
+    private static final Class<?> NO_CLASS = void.class;
+    private static final String NO_TABLE = "";
+
+    /**
+     * 按操作、实体类、表名三层查找，查找时不需要拼接键，已存在时不分配对象
+     */
+    private final ConcurrentMap<String, ConcurrentMap<Class<?>, ConcurrentMap<String, OperationMetrics>>> operations =
+        new ConcurrentHashMap<>();
+    private final Collection<OperationMetrics> all = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void onExecute(String operation, Class<?> entityClass, String tableName, int rows, long bindNanos,
+                          long executeNanos)
+    {
+        OperationMetrics metrics = get(operation, entityClass, tableName);
+        metrics.executions.increment();
+        metrics.rows.add(rows);
+        metrics.batchSize.record(rows);
+        metrics.bindNanos.record(bindNanos);
+        metrics.executeNanos.record(executeNanos);
+    }
+
+    @Override
+    public void onFailure(String operation, Class<?> entityClass, String tableName, Exception error)
+    {
+        get(operation, entityClass, tableName).failures.increment();
+    }
+
+    /**
+     * 获取一个操作的度量数据，不存在时创建
+     * @param operation 操作名
+     * @param entityClass 实体类，可以为null
+     * @param tableName 表名，可以为null
+     * @return 度量数据
+     */
+    public OperationMetrics get(String operation, Class<?> entityClass, String tableName)
+    {
+        ConcurrentMap<Class<?>, ConcurrentMap<String, OperationMetrics>> byClass = operations.get(operation);
+        if (byClass == null)
+        {
+            byClass = operations.computeIfAbsent(operation, k -> new ConcurrentHashMap<>());
+        }
+        Class<?> classKey = entityClass == null ? NO_CLASS : entityClass;
+        ConcurrentMap<String, OperationMetrics> byTable = byClass.get(classKey);
+        if (byTable == null)
+        {
+            byTable = byClass.computeIfAbsent(classKey, k -> new ConcurrentHashMap<>());
+        }
+        String tableKey = tableName == null ? NO_TABLE : tableName;
+        OperationMetrics metrics = byTable.get(tableKey);
+        if (metrics == null)
+        {
+            metrics = byTable.computeIfAbsent(tableKey, k -> {
+                OperationMetrics created = new OperationMetrics(operation, entityClass, tableName);
+                all.add(created);
+                return created;
+            });
+        }
+        return metrics;
+    }
+
+    /**
+     * @return 所有操作的度量数据，是实时视图
+     */
+    public Collection<OperationMetrics> getOperations()
+    {
+        return Collections.unmodifiableCollection(all);
+    }
+
+    /**
+     * 清空所有度量数据
+     */
+    public void reset()
+    {
+        operations.clear();
+        all.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("MetricsRegistry{");
+        for (OperationMetrics metrics : all)
+        {
+            sb.append("\n  ").append(metrics);
+        }
+        return sb.append("\n}").toString();
+    }
+
+    /**
+     * 一个操作在一个实体类和表上的度量数据
+     */
+    public static class OperationMetrics
+    {
+        private final String operation;
+        private final Class<?> entityClass;
+        private final String tableName;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final Histogram batchSize = new Histogram();
+        private final Histogram bindNanos = new Histogram();
+        private final Histogram executeNanos = new Histogram();
+
+        OperationMetrics(String operation, Class<?> entityClass, String tableName)
+        {
+            this.operation = operation;
+            this.entityClass = entityClass;
+            this.tableName = tableName;
+        }
+
+        /**
+         * @return 操作名，即DBHelper的方法名
+         */
+        public String getOperation()
+        {
+            return operation;
+        }
+
+        /**
+         * @return 实体类，没有实体时为null
+         */
+        public Class<?> getEntityClass()
+        {
+            return entityClass;
+        }
+
+        /**
+         * @return 表名，没有实体时为null
+         */
+        public String getTableName()
+        {
+            return tableName;
+        }
+
+        /**
+         * @return 执行次数，分批操作为executeBatch的次数
+         */
+        public long getExecutions()
+        {
+            return executions.sum();
+        }
+
+        /**
+         * @return 绑定的总行数
+         */
+        public long getRows()
+        {
+            return rows.sum();
+        }
+
+        /**
+         * @return 失败次数
+         */
+        public long getFailures()
+        {
+            return failures.sum();
+        }
+
+        /**
+         * @return 每次执行的行数分布
+         */
+        public Histogram getBatchSize()
+        {
+            return batchSize;
+        }
+
+        /**
+         * @return 每次执行前读取输入并绑定参数的耗时分布，单位纳秒
+         */
+        public Histogram getBindNanos()
+        {
+            return bindNanos;
+        }
+
+        /**
+         * @return 每次执行的耗时分布，单位纳秒
+         */
+        public Histogram getExecuteNanos()
+        {
+            return executeNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return operation + (entityClass == null ? "" : " " + entityClass.getSimpleName())
+                + (tableName == null ? "" : " -> " + tableName) + ": executions=" + getExecutions() + ", rows="
+                + getRows() + ", failures=" + getFailures() + ", batchSize[" + batchSize + "], bindNanos[" + bindNanos
+                + "], executeNanos[" + executeNanos + "]";
+        }
+    }
+}
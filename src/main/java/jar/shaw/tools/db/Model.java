@@ -1,6 +1,5 @@
 package jar.shaw.tools.db;
 
-import jar.shaw.tools.util.MapBuilder;
 import javafx.util.Pair;
 
 import java.lang.reflect.Field;
@@ -11,7 +10,6 @@ import java.util.Map;
 import java.util.stream.Stream;
 
 import static jar.shaw.tools.util.Utils.getAnnotation;
-import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toMap;
 
 /**
@@ -23,18 +21,14 @@ import static java.util.stream.Collectors.toMap;
 public class Model
 {
 
-    private static Map<Class<?>, String> java2sqlTypeMaping = new MapBuilder()
-        .put(String.class, "varchar(255)")
-        .put(Long.class, "long")
-        .put(Integer.class, "int")
-        .put(Short.class, "smallint")
-        .put(Byte.class, "tinyint")
-        .put(Boolean.class, "bit")
-        .put(Double.class, "double")
-        .put(Float.class, "float")
-        .put(java.sql.Date.class, "date")
-        .put(java.util.Date.class, "datetime")
-        .build();
+    private static final ClassValue<TableMetadata<?>> METADATA = new ClassValue<TableMetadata<?>>()
+    {
+        @Override
+        protected TableMetadata<?> computeValue(Class<?> type)
+        {
+            return loadTableMetadata(type);
+        }
+    };
 
     /**
      * <p>获取类对应的表名</p>
@@ -52,64 +46,48 @@ public class Model
             return tableAnnotation.value();
         }
 
-        List<String> tokens = new ArrayList<>();
-        String className =  clazz.getSimpleName();
-        StringBuilder sb = new StringBuilder();
-        int len = className.length();
-        for (int i = 0; i < len; i++)
-        {
-            int c = className.charAt(i);
-            if (isNotCapital(c))
-            {
-                sb.append((char)c);
-            }
-            else
-            {
-                if (sb.length() > 0)
-                {
-                    //the last token ended
-                    tokens.add(sb.toString());
-                    sb.delete(0, sb.length());
-                }
-                sb.append((char)(c + 'a' - 'A'));
-                //find the next non Capital letter
-                int nextNonCapitalIndex = -1;
-                for (int j = i + 1; j < className.length(); j++)
-                {
-                    if (isNotCapital(className.charAt(j)))
-                    {
-                        nextNonCapitalIndex = j;
-                        break;
-                    }
-                }
-
-                //if this capital is the begin of a abbreviation
-                //nextNonCapitalIndex == -1 indicate capital extends to the end
-                if (nextNonCapitalIndex - i > 1 || nextNonCapitalIndex == -1)
-                {
-                    //k is the abbreviation end index
-                    int k = nextNonCapitalIndex == -1 ?  len - 1 : nextNonCapitalIndex - 2;
-                    for (int j = i + 1; j <= k; j++)
-                    {
-                        sb.append((char)(className.charAt(j) + 'a' - 'A'));
-                    }
-                    tokens.add(sb.toString());
-                    sb.delete(0, sb.length());
-                    i = k;
-                }
-            }
-        }
-        if (sb.length() > 0)
+        TableMetadata<?> metadata = getTableMetadata(clazz);
+        if (metadata != null)
         {
-            tokens.add(sb.toString());
+            return metadata.tableName();
         }
-        return tokens.stream().collect(joining("_"));
+        return MappingRules.tableName(clazz.getSimpleName());
+    }
 
+    /**
+     * 获取{@link TableMetadataProcessor}为类生成的元数据，结果按类缓存
+     * @param clazz 实体类
+     * @return 生成的元数据，没有生成时返回null
+     */
+    static TableMetadata<?> getTableMetadata(Class<?> clazz)
+    {
+        return METADATA.get(clazz);
     }
 
-    private static boolean isNotCapital(int c)
+    /**
+     * 按{@link TableMetadata}的命名规则加载生成的类，嵌套类的$换成下划线
+     */
+    private static TableMetadata<?> loadTableMetadata(Class<?> clazz)
     {
-        return c < 'A' || c > 'Z';
+        if (clazz.isPrimitive() || clazz.isArray())
+        {
+            return null;
+        }
+        try
+        {
+            Class<?> generated = Class.forName(clazz.getName().replace('$', '_') + "TableMetadata", true,
+                clazz.getClassLoader());
+            if (!TableMetadata.class.isAssignableFrom(generated))
+            {
+                return null;
+            }
+            TableMetadata<?> metadata = (TableMetadata<?>) generated.newInstance();
+            return metadata.entityClass() == clazz ? metadata : null;
+        }
+        catch (LinkageError | ReflectiveOperationException e)
+        {
+            return null;
+        }
     }
 
     static List<Pair<String, Method>> getColumnAndGetters(Class<?> clazz)
@@ -135,9 +113,20 @@ public class Model
     static List<Pair<String, String>> getColumnAndTypes(Class<?> clazz)
     {
         List<Pair<String, String>> result = new ArrayList<>();
+        TableMetadata<?> metadata = getTableMetadata(clazz);
+        if (metadata != null)
+        {
+            List<String> columns = metadata.columnNames();
+            List<Class<?>> types = metadata.columnTypes();
+            for (int i = 0; i < columns.size(); i++)
+            {
+                result.add(new Pair<>(columns.get(i), MappingRules.sqlType(types.get(i).getName())));
+            }
+            return result;
+        }
         for (Field field : clazz.getDeclaredFields())
         {
-            String type = java2sqlTypeMaping.get(field.getType());
+            String type = MappingRules.sqlType(field.getType().getName());
             if (getAnnotation(field, ExclusiveColumn.class) == null)
             {
                 ColumnName annotation = getAnnotation(field, ColumnName.class);
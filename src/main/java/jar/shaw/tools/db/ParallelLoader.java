@@ -0,0 +1,231 @@
+package jar.shaw.tools.db;
+
+import jar.shaw.tools.lambda.ThrowableSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * <p>多连接并行批量导入，将输入按chunkSize分块，每个分块在一个独立的连接和事务中用
+ * {@link DBHelper#batchInsert(Connection, Iterator, int, int)}插入</p>
+ * <p>同时在内存中的分块数不超过并行度的两倍，所以内存占用与输入总量无关。
+ * 某个分块失败时回滚该分块，并停止读取后续输入，已经提交的分块不受影响。读取输入时抛出异常也会停止读取，
+ * 等已经提交的分块结束后返回，异常见{@link LoadResult#getSourceError()}，结果见{@link LoadResult}</p>
+ * 例如：
+ * <pre>
+ *     LoadResult result = new ParallelLoader(dataSource, 8).chunkSize(20000).load(users.iterator());
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/4</p>
+ */
+public class ParallelLoader
+{
+    private static Logger log = LoggerFactory.getLogger(ParallelLoader.class);
+
+    private final ThrowableSupplier<Connection> connectionSupplier;
+    private final int parallelism;
+    private int chunkSize = 10000;
+    private int batchSize = 1000;
+
+    /**
+     * 创建并行导入器
+     * @param dataSource 数据源，每个分块从中获取一个连接，用完后关闭
+     * @param parallelism 并行度，即同时使用的连接数
+     */
+    public ParallelLoader(DataSource dataSource, int parallelism)
+    {
+        this(dataSource::getConnection, parallelism);
+    }
+
+    /**
+     * 创建并行导入器
+     * @param connectionSupplier 连接提供者，每个分块从中获取一个连接，用完后关闭
+     * @param parallelism 并行度，即同时使用的连接数
+     */
+    public ParallelLoader(ThrowableSupplier<Connection> connectionSupplier, int parallelism)
+    {
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.connectionSupplier = connectionSupplier;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 设置每个分块的行数，一个分块在一个事务中提交，默认10000
+     * @param chunkSize 每个分块的行数
+     * @return ParallelLoader本身
+     */
+    public ParallelLoader chunkSize(int chunkSize)
+    {
+        if (chunkSize <= 0)
+        {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * 设置分块内每次executeBatch的行数，默认1000
+     * @param batchSize 每批的行数
+     * @return ParallelLoader本身
+     */
+    public ParallelLoader batchSize(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 并行导入流中的实体对象
+     * @param objects 要保存的实体对象流
+     * @return 导入结果
+     */
+    public <T> LoadResult load(Stream<T> objects)
+    {
+        return load(objects.iterator());
+    }
+
+    /**
+     * 并行导入实体对象，输入在调用线程上按顺序读取，分块在线程池中插入，方法在所有分块结束后返回
+     * @param objects 要保存的实体对象
+     * @return 导入结果
+     */
+    public <T> LoadResult load(Iterator<T> objects)
+    {
+        long start = System.currentTimeMillis();
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "parallel-loader-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        ConcurrentLinkedQueue<LoadResult.Chunk> chunks = new ConcurrentLinkedQueue<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        int index = 0;
+        Exception sourceError = null;
+        try
+        {
+            while (!failed.get() && objects.hasNext())
+            {
+                List<T> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && objects.hasNext())
+                {
+                    chunk.add(objects.next());
+                }
+                inFlight.acquire();
+                int chunkIndex = index++;
+                executor.execute(() -> {
+                    try
+                    {
+                        LoadResult.Chunk result = insertChunk(chunkIndex, chunk);
+                        if (!result.isCommitted())
+                        {
+                            failed.set(true);
+                        }
+                        chunks.add(result);
+                    }
+                    finally
+                    {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        catch (InterruptedException e)
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("parallel load interrupted", e);
+        }
+        catch (Exception e)
+        {
+            //包括迭代器绕过编译检查抛出的受检异常，已经提交的分块照常完成，结果中带上这个异常
+            log.error("failed to read objects after " + index + " chunks: " + e.getLocalizedMessage(), e);
+            sourceError = e;
+        }
+        finally
+        {
+            //无论输入是否出错都关闭线程池，已经提交的分块执行完后线程退出
+            executor.shutdown();
+        }
+        try
+        {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("parallel load interrupted", e);
+        }
+        LoadResult result = new LoadResult(new ArrayList<>(chunks), System.currentTimeMillis() - start, sourceError);
+        log.info("parallel load finished: " + result);
+        return result;
+    }
+
+    private LoadResult.Chunk insertChunk(int index, List<?> chunk)
+    {
+        long start = System.currentTimeMillis();
+        Connection connection = null;
+        try
+        {
+            connection = connectionSupplier.get();
+            connection.setAutoCommit(false);
+            DBHelper.batchInsert(connection, chunk.iterator(), batchSize, 0);
+            connection.commit();
+            return new LoadResult.Chunk(index, chunk.size(), true, System.currentTimeMillis() - start, null);
+        }
+        catch (Exception e)
+        {
+            log.error("chunk " + index + " failed, rolling back: " + e.getLocalizedMessage(), e);
+            if (connection != null)
+            {
+                try
+                {
+                    connection.rollback();
+                }
+                catch (Exception rollbackError)
+                {
+                    e.addSuppressed(rollbackError);
+                }
+            }
+            return new LoadResult.Chunk(index, chunk.size(), false, System.currentTimeMillis() - start, e);
+        }
+        finally
+        {
+            if (connection != null)
+            {
+                try
+                {
+                    connection.close();
+                }
+                catch (Exception e)
+                {
+                    log.warn("failed to close connection of chunk " + index, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package jar.shaw.tools.db;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>流式执行SQL脚本，用{@link SQLScriptReader}逐条读取语句，内存占用与脚本大小无关，适合执行几个G的数据或迁移脚本</p>
+ * <p>连续的INSERT、UPDATE、DELETE、REPLACE、MERGE语句通过{@link Statement#addBatch(String)}合并成一批执行，
+ * 其他语句（DDL、SET、存储过程等）遇到时先执行已缓存的批，再单独执行，所以执行顺序与脚本一致</p>
+ * 例如：
+ * <pre>
+ *     long count = new SQLScriptExecutor().batchSize(500)
+ *         .progress(n -&gt; log.info(n + " statements executed"))
+ *         .execute(connection, Paths.get("seed.sql"));
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/16</p>
+ */
+public class SQLScriptExecutor
+{
+    private static final String[] BATCHABLE = {"insert", "update", "delete", "replace", "merge"};
+
+    private int batchSize = 1000;
+    private boolean backslashEscapes;
+    private LongConsumer progress = n -> {};
+
+    /**
+     * 设置每批最多包含的语句数，默认1000，为1时每条语句单独执行
+     * @param batchSize 每批的语句数
+     * @return SQLScriptExecutor本身
+     */
+    public SQLScriptExecutor batchSize(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 设置引号中的反斜杠是否作为转义符，MySQL导出的脚本需要设置为true
+     * @param backslashEscapes 反斜杠是否作为转义符
+     * @return SQLScriptExecutor本身
+     */
+    public SQLScriptExecutor backslashEscapes(boolean backslashEscapes)
+    {
+        this.backslashEscapes = backslashEscapes;
+        return this;
+    }
+
+    /**
+     * 设置进度回调，每执行完一批或一条单独的语句后调用，参数是已执行的语句总数
+     * @param progress 进度回调
+     * @return SQLScriptExecutor本身
+     */
+    public SQLScriptExecutor progress(LongConsumer progress)
+    {
+        this.progress = progress;
+        return this;
+    }
+
+    /**
+     * 用UTF-8编码读取并执行脚本文件
+     * @param connection 数据库连接
+     * @param path 脚本文件
+     * @return 执行的语句数
+     * @throws SQLException SQLException
+     * @throws IOException IOException
+     */
+    public long execute(Connection connection, Path path) throws SQLException, IOException
+    {
+        return execute(connection, path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 用指定编码读取并执行脚本文件
+     * @param connection 数据库连接
+     * @param path 脚本文件
+     * @param charset 脚本编码
+     * @return 执行的语句数
+     * @throws SQLException SQLException
+     * @throws IOException IOException
+     */
+    public long execute(Connection connection, Path path, Charset charset) throws SQLException, IOException
+    {
+        try (Reader reader = Files.newBufferedReader(path, charset))
+        {
+            return execute(connection, reader);
+        }
+    }
+
+    /**
+     * 读取并执行脚本，该方法不会调用connection.commit()，也不会关闭reader
+     * @param connection 数据库连接
+     * @param reader 脚本输入
+     * @return 执行的语句数
+     * @throws SQLException 语句执行失败，异常信息中包含失败语句的序号
+     * @throws IOException IOException
+     */
+    public long execute(Connection connection, Reader reader) throws SQLException, IOException
+    {
+        SQLScriptReader script = new SQLScriptReader(reader, backslashEscapes);
+        long executed = 0;
+        int batched = 0;
+        try (Statement statement = connection.createStatement())
+        {
+            String sql;
+            while ((sql = script.next()) != null)
+            {
+                if (batchSize > 1 && isBatchable(sql))
+                {
+                    statement.addBatch(sql);
+                    if (++batched == batchSize)
+                    {
+                        executed = executeBatch(statement, executed, batched);
+                        batched = 0;
+                    }
+                    continue;
+                }
+                if (batched > 0)
+                {
+                    executed = executeBatch(statement, executed, batched);
+                    batched = 0;
+                }
+                try
+                {
+                    statement.execute(sql);
+                }
+                catch (SQLException e)
+                {
+                    throw new SQLException("statement " + (executed + 1) + " failed: " + abbreviate(sql) + ", "
+                        + e.getMessage(), e.getSQLState(), e.getErrorCode(), e);
+                }
+                progress.accept(++executed);
+            }
+            if (batched > 0)
+            {
+                executed = executeBatch(statement, executed, batched);
+            }
+        }
+        return executed;
+    }
+
+    private long executeBatch(Statement statement, long executed, int batched) throws SQLException
+    {
+        try
+        {
+            statement.executeBatch();
+        }
+        catch (SQLException e)
+        {
+            throw new SQLException("batch of statements " + (executed + 1) + "-" + (executed + batched) + " failed: "
+                + e.getMessage(), e.getSQLState(), e.getErrorCode(), e);
+        }
+        executed += batched;
+        progress.accept(executed);
+        return executed;
+    }
+
+    /**
+     * 判断语句是否可以放到批中执行，只根据第一个关键字判断
+     */
+    static boolean isBatchable(String sql)
+    {
+        for (String keyword : BATCHABLE)
+        {
+            if (sql.regionMatches(true, 0, keyword, 0, keyword.length())
+                && (sql.length() == keyword.length() || !Character.isLetterOrDigit(sql.charAt(keyword.length()))))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String abbreviate(String sql)
+    {
+        return sql.length() > 200 ? sql.substring(0, 200) + "..." : sql;
+    }
+}
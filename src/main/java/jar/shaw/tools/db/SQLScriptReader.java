@@ -0,0 +1,338 @@
+package jar.shaw.tools.db;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * <p>从Reader中逐条读取SQL脚本里的语句，只缓存当前语句，内存占用与脚本大小无关</p>
+ * <p>能正确处理以下情况：</p>
+ * <ol>
+ * <li>单引号、双引号、反引号中的分隔符，以及引号中连续两个引号的转义，可选支持反斜杠转义</li>
+ * <li>PostgreSQL的$$或$tag$引用，分隔符中包含$时不识别这种引用</li>
+ * <li>--行注释和/* *&#47;块注释，注释会被去掉，但/*!和/*+开头的MySQL可执行注释和hint会保留</li>
+ * <li>MySQL客户端的DELIMITER命令，例如DELIMITER $$，用于定义存储过程</li>
+ * </ol>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/16</p>
+ */
+public class SQLScriptReader implements Closeable
+{
+    private static final String DELIMITER_COMMAND = "delimiter";
+
+    private final Reader reader;
+    private final boolean backslashEscapes;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private final StringBuilder pushback = new StringBuilder();
+    private final StringBuilder sb = new StringBuilder();
+    private String delimiter = ";";
+
+    /**
+     * 创建脚本读取器，引号中的反斜杠不作为转义符
+     * @param reader 脚本输入
+     */
+    public SQLScriptReader(Reader reader)
+    {
+        this(reader, false);
+    }
+
+    /**
+     * 创建脚本读取器
+     * @param reader 脚本输入
+     * @param backslashEscapes 引号中的反斜杠是否作为转义符，MySQL默认是，标准SQL不是
+     */
+    public SQLScriptReader(Reader reader, boolean backslashEscapes)
+    {
+        this.reader = reader;
+        this.backslashEscapes = backslashEscapes;
+    }
+
+    /**
+     * 读取下一条语句
+     * @return 去掉分隔符、注释和首尾空白的语句，脚本结束时返回null
+     * @throws IOException IOException
+     */
+    public String next() throws IOException
+    {
+        sb.setLength(0);
+        int c;
+        while ((c = read()) != -1)
+        {
+            if (c == '\'' || c == '"' || c == '`')
+            {
+                sb.append((char) c);
+                copyQuoted((char) c);
+                continue;
+            }
+            if (c == '-' && peek() == '-')
+            {
+                skipLineComment();
+                continue;
+            }
+            if (c == '/' && peek() == '*')
+            {
+                read();
+                int next = peek();
+                if (next == '!' || next == '+')
+                {
+                    sb.append("/*");
+                    copyBlockComment();
+                }
+                else
+                {
+                    skipBlockComment();
+                    sb.append(' ');
+                }
+                continue;
+            }
+            if (c == '$' && delimiter.indexOf('$') < 0 && !afterIdentifier() && delimiterCommandEnd() < 0
+                && copyDollarQuoted())
+            {
+                continue;
+            }
+            if (c == '\n' && isDelimiterCommand())
+            {
+                continue;
+            }
+            sb.append((char) c);
+            if (endsWithDelimiter())
+            {
+                sb.setLength(sb.length() - delimiter.length());
+                String statement = sb.toString().trim();
+                if (!statement.isEmpty())
+                {
+                    return statement;
+                }
+                sb.setLength(0);
+            }
+        }
+        isDelimiterCommand();
+        String statement = sb.toString().trim();
+        sb.setLength(0);
+        return statement.isEmpty() ? null : statement;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+
+    private int read() throws IOException
+    {
+        if (pushback.length() > 0)
+        {
+            char c = pushback.charAt(pushback.length() - 1);
+            pushback.setLength(pushback.length() - 1);
+            return c;
+        }
+        if (position == limit)
+        {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0)
+            {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException
+    {
+        int c = read();
+        if (c != -1)
+        {
+            pushback.append((char) c);
+        }
+        return c;
+    }
+
+    private void copyQuoted(char quote) throws IOException
+    {
+        int c;
+        while ((c = read()) != -1)
+        {
+            sb.append((char) c);
+            if (c == '\\' && backslashEscapes && quote != '`')
+            {
+                int escaped = read();
+                if (escaped != -1)
+                {
+                    sb.append((char) escaped);
+                }
+            }
+            else if (c == quote)
+            {
+                if (peek() != quote)
+                {
+                    return;
+                }
+                sb.append((char) read());
+            }
+        }
+    }
+
+    private void skipLineComment() throws IOException
+    {
+        int c;
+        while ((c = peek()) != -1 && c != '\n')
+        {
+            read();
+        }
+    }
+
+    private void skipBlockComment() throws IOException
+    {
+        int c;
+        int last = 0;
+        while ((c = read()) != -1)
+        {
+            if (last == '*' && c == '/')
+            {
+                return;
+            }
+            last = c;
+        }
+    }
+
+    private void copyBlockComment() throws IOException
+    {
+        int c;
+        int last = 0;
+        while ((c = read()) != -1)
+        {
+            sb.append((char) c);
+            if (last == '*' && c == '/')
+            {
+                return;
+            }
+            last = c;
+        }
+    }
+
+    /**
+     * 遇到$时尝试读取$tag$形式的引用开始标记，是引用时复制到结束标记为止，否则退回读取的字符
+     * @return 是否是$引用
+     */
+    private boolean copyDollarQuoted() throws IOException
+    {
+        StringBuilder tag = new StringBuilder("$");
+        int c;
+        while ((c = read()) != -1)
+        {
+            tag.append((char) c);
+            if (c == '$')
+            {
+                break;
+            }
+            boolean valid = Character.isLetter(c) || c == '_' || (tag.length() > 2 && Character.isDigit(c));
+            if (!valid)
+            {
+                c = -1;
+                break;
+            }
+        }
+        if (c != '$')
+        {
+            //not a dollar quote, e.g. $1 parameter
+            for (int i = tag.length() - 1; i > 0; i--)
+            {
+                pushback.append(tag.charAt(i));
+            }
+            return false;
+        }
+        sb.append(tag);
+        int matched = 0;
+        while ((c = read()) != -1)
+        {
+            sb.append((char) c);
+            matched = c == tag.charAt(matched) ? matched + 1 : (c == '$' ? 1 : 0);
+            if (matched == tag.length())
+            {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * $紧跟在标识符后面时是标识符的一部分，不是$引用
+     */
+    private boolean afterIdentifier()
+    {
+        if (sb.length() == 0)
+        {
+            return false;
+        }
+        char last = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+    }
+
+    private boolean endsWithDelimiter()
+    {
+        int length = delimiter.length();
+        int start = sb.length() - length;
+        if (start < 0)
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (sb.charAt(start + i) != delimiter.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 当前缓存的内容是一行DELIMITER命令时，修改分隔符并清空缓存
+     */
+    private boolean isDelimiterCommand()
+    {
+        int end = delimiterCommandEnd();
+        if (end < 0)
+        {
+            return false;
+        }
+        String newDelimiter = sb.substring(end).trim();
+        if (newDelimiter.isEmpty() || newDelimiter.indexOf('\n') >= 0)
+        {
+            return false;
+        }
+        delimiter = newDelimiter;
+        sb.setLength(0);
+        return true;
+    }
+
+    /**
+     * @return 当前缓存的内容以DELIMITER关键字和空白开头时，返回关键字结束的位置，否则返回-1
+     */
+    private int delimiterCommandEnd()
+    {
+        int start = 0;
+        while (start < sb.length() && Character.isWhitespace(sb.charAt(start)))
+        {
+            start++;
+        }
+        int end = start + DELIMITER_COMMAND.length();
+        if (end >= sb.length() || !Character.isWhitespace(sb.charAt(end)))
+        {
+            return -1;
+        }
+        for (int i = start; i < end; i++)
+        {
+            if (Character.toLowerCase(sb.charAt(i)) != DELIMITER_COMMAND.charAt(i - start))
+            {
+                return -1;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,211 @@
+package jar.shaw.tools.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * 内置的数据库方言
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/5</p>
+ */
+public enum StandardDialect implements Dialect
+{
+    MYSQL("MySQL", "`", 65535, "bigint(20) NOT NULL AUTO_INCREMENT")
+    {
+        @Override
+        public String upsertSQL(String tableName, List<String> columns, List<String> keyColumns)
+        {
+            List<String> values = nonKeyColumns(columns, keyColumns);
+            return insertSQL(tableName, columns) + " ON DUPLICATE KEY UPDATE " + (values.isEmpty()
+                ? quote(keyColumns.get(0)) + "=" + quote(keyColumns.get(0))
+                : join(values, c -> quote(c) + "=VALUES(" + quote(c) + ")"));
+        }
+
+        /**
+         * 需要驱动开启allowLoadLocalInfile，服务器开启local_infile。布尔字段的列是bit，LOAD DATA不能把文本'0'加载到bit列，
+         * LOCAL模式下转换错误只是警告，false会被截断为1，所以布尔列先读入用户变量，再在SET中比较得到0或1
+         */
+        @Override
+        public String bulkLoadSQL(String tableName, List<String> columns, List<Class<?>> types, String file)
+        {
+            StringBuilder targets = new StringBuilder();
+            StringBuilder set = new StringBuilder();
+            for (int i = 0; i < columns.size(); i++)
+            {
+                if (i > 0)
+                {
+                    targets.append(',');
+                }
+                Class<?> type = types.get(i);
+                if (type == boolean.class || type == Boolean.class)
+                {
+                    targets.append("@v").append(i);
+                    set.append(set.length() == 0 ? " SET " : ",");
+                    set.append(quote(columns.get(i))).append("=(@v").append(i).append("='1')");
+                }
+                else
+                {
+                    targets.append(quote(columns.get(i)));
+                }
+            }
+            return "LOAD DATA LOCAL INFILE " + literal(file) + " INTO TABLE " + quote(tableName)
+                + " CHARACTER SET utf8mb4 FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"' ESCAPED BY ''"
+                + " LINES TERMINATED BY '\\n' (" + targets + ")" + set;
+        }
+    },
+
+    POSTGRESQL("PostgreSQL", "\"", 32767, "bigserial NOT NULL")
+    {
+        @Override
+        public String upsertSQL(String tableName, List<String> columns, List<String> keyColumns)
+        {
+            List<String> values = nonKeyColumns(columns, keyColumns);
+            return insertSQL(tableName, columns) + " ON CONFLICT (" + join(keyColumns, this::quote) + ") " + (values.isEmpty()
+                ? "DO NOTHING"
+                : "DO UPDATE SET " + join(values, c -> quote(c) + "=EXCLUDED." + quote(c)));
+        }
+
+        /**
+         * COPY FROM文件由服务器进程读取，读不到客户端创建的临时文件，所以从标准输入读取，文件内容通过驱动的CopyManager发送
+         */
+        @Override
+        public String bulkLoadSQL(String tableName, List<String> columns, List<Class<?>> types, String file)
+        {
+            return "COPY " + quote(tableName) + "(" + join(columns, this::quote) + ") FROM STDIN"
+                + " WITH (FORMAT csv, NULL 'NULL', ENCODING 'UTF8')";
+        }
+
+        @Override
+        public boolean bulkLoadFromStdin()
+        {
+            return true;
+        }
+    },
+
+    /**
+     * H2不加引号的标识符会被转成大写，加引号后大小写敏感，会和其他不加引号的SQL对不上，所以H2不引用标识符
+     */
+    H2("H2", "", 100000, "bigint NOT NULL AUTO_INCREMENT")
+    {
+        @Override
+        public String upsertSQL(String tableName, List<String> columns, List<String> keyColumns)
+        {
+            return "MERGE INTO " + quote(tableName) + "(" + join(columns, this::quote) + ") KEY("
+                + join(keyColumns, this::quote) + ") VALUES(" + join(columns, c -> "?") + ")";
+        }
+
+        @Override
+        public String bulkLoadSQL(String tableName, List<String> columns, List<Class<?>> types, String file)
+        {
+            return "INSERT INTO " + quote(tableName) + "(" + join(columns, this::quote) + ") SELECT * FROM CSVREAD("
+                + literal(file) + ", " + literal(String.join(",", columns)) + ", 'charset=UTF-8 nullString=NULL')";
+        }
+    },
+
+    /**
+     * 未知数据库，不引用标识符，参数上限取常见驱动的最小值，id用标准SQL的标识列自增
+     */
+    GENERIC(null, "", 2000, "bigint GENERATED BY DEFAULT AS IDENTITY");
+
+    private static final List<Dialect> REGISTERED = new ArrayList<>();
+
+    static
+    {
+        for (Dialect dialect : ServiceLoader.load(Dialect.class))
+        {
+            REGISTERED.add(dialect);
+        }
+    }
+
+    private final String productName;
+    private final String quote;
+    private final int maxBindParameters;
+    private final String idColumnDefinition;
+
+    StandardDialect(String productName, String quote, int maxBindParameters, String idColumnDefinition)
+    {
+        this.productName = productName;
+        this.quote = quote;
+        this.maxBindParameters = maxBindParameters;
+        this.idColumnDefinition = idColumnDefinition;
+    }
+
+    @Override
+    public boolean supports(String databaseProductName)
+    {
+        return productName != null && productName.equalsIgnoreCase(databaseProductName);
+    }
+
+    @Override
+    public String quote(String identifier)
+    {
+        return quote + identifier + quote;
+    }
+
+    @Override
+    public int maxBindParameters()
+    {
+        return maxBindParameters;
+    }
+
+    @Override
+    public String idColumnDefinition()
+    {
+        return idColumnDefinition;
+    }
+
+    String insertSQL(String tableName, List<String> columns)
+    {
+        return "INSERT INTO " + quote(tableName) + "(" + join(columns, this::quote) + ") VALUES("
+            + join(columns, c -> "?") + ")";
+    }
+
+    /**
+     * 将文件路径等字符串写成SQL字符串字面量，反斜杠统一换成/，避免被MySQL当作转义符
+     */
+    static String literal(String value)
+    {
+        return "'" + value.replace('\\', '/').replace("'", "''") + "'";
+    }
+
+    /**
+     * 用逗号连接转换后的列名，供生成SQL使用
+     */
+    static String join(List<String> columns, Function<String, String> mapper)
+    {
+        return columns.stream().map(mapper).collect(joining(","));
+    }
+
+    /**
+     * @return columns中不属于键的列
+     */
+    static List<String> nonKeyColumns(List<String> columns, List<String> keyColumns)
+    {
+        return columns.stream().filter(c -> !keyColumns.contains(c)).collect(toList());
+    }
+
+    static Dialect detect(String databaseProductName)
+    {
+        for (Dialect dialect : REGISTERED)
+        {
+            if (dialect.supports(databaseProductName))
+            {
+                return dialect;
+            }
+        }
+        for (StandardDialect dialect : values())
+        {
+            if (dialect.supports(databaseProductName))
+            {
+                return dialect;
+            }
+        }
+        return GENERIC;
+    }
+}
@@ -0,0 +1,250 @@
+package jar.shaw.tools.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>连接级别的PreparedStatement缓存，按SQL缓存，由于{@link DBHelper}生成的SQL和实体类一一对应，相当于按实体类缓存</p>
+ * <p>缓存是可选的，用{@link #wrap(Connection, int)}包装连接后，{@link DBHelper}的单行操作会复用缓存的语句，
+ * 超过容量时关闭最久未使用的语句。包装后的连接关闭时会先关闭缓存的语句，
+ * 如果连接来自连接池，也可以在归还前调用{@link #invalidate(Connection)}清空缓存</p>
+ * 例如：
+ * <pre>
+ *     try (Connection connection = StatementCache.wrap(dataSource.getConnection(), 64)) {
+ *         for (User user : users) {
+ *             DBHelper.insert(connection, user);
+ *         }
+ *     }
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/9</p>
+ */
+public final class StatementCache
+{
+    private static Logger log = LoggerFactory.getLogger(StatementCache.class);
+
+    private final Connection connection;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private long hits;
+    private long misses;
+
+    private StatementCache(Connection connection, int maxSize)
+    {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+            {
+                if (size() > maxSize)
+                {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 包装连接，使其带有PreparedStatement缓存，关闭包装后的连接时会先关闭缓存的语句再关闭原连接
+     * @param connection 原连接
+     * @param maxSize 最多缓存的语句数
+     * @return 带缓存的连接
+     */
+    public static Connection wrap(Connection connection, int maxSize)
+    {
+        if (maxSize <= 0)
+        {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        if (of(connection) != null)
+        {
+            return connection;
+        }
+        StatementCache cache = new StatementCache(connection, maxSize);
+        return (Connection) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, new Handler(cache));
+    }
+
+    /**
+     * 关闭连接上缓存的所有语句，连接本身不关闭，用于连接归还连接池之前
+     * @param connection {@link #wrap(Connection, int)}返回的连接，其他连接直接忽略
+     */
+    public static void invalidate(Connection connection)
+    {
+        StatementCache cache = of(connection);
+        if (cache != null)
+        {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 获取连接上的语句缓存
+     * @param connection 连接
+     * @return 连接是{@link #wrap(Connection, int)}返回的连接时返回其缓存，否则返回null
+     */
+    public static StatementCache of(Connection connection)
+    {
+        if (Proxy.isProxyClass(connection.getClass()))
+        {
+            InvocationHandler handler = Proxy.getInvocationHandler(connection);
+            if (handler instanceof Handler)
+            {
+                return ((Handler) handler).cache;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 命中缓存的次数
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return 未命中缓存而新建语句的次数
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return 当前缓存的语句数
+     */
+    public synchronized int size()
+    {
+        return statements.size();
+    }
+
+    /**
+     * 取出SQL对应的语句，语句在归还之前不在缓存中，所以同一个SQL被嵌套使用时会得到不同的语句
+     * @param sql sql语句
+     * @return PreparedStatement
+     * @throws SQLException SQLException
+     */
+    PreparedStatement acquire(String sql) throws SQLException
+    {
+        synchronized (this)
+        {
+            PreparedStatement prepstmt = statements.remove(sql);
+            if (prepstmt != null && !prepstmt.isClosed())
+            {
+                hits++;
+                return prepstmt;
+            }
+            misses++;
+        }
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * 归还语句到缓存，已有相同SQL的语句时关闭原来缓存的语句
+     * @param sql sql语句
+     * @param prepstmt {@link #acquire(String)}得到的语句
+     */
+    void release(String sql, PreparedStatement prepstmt)
+    {
+        try
+        {
+            prepstmt.clearParameters();
+            prepstmt.clearBatch();
+        }
+        catch (SQLException e)
+        {
+            closeQuietly(prepstmt);
+            return;
+        }
+        PreparedStatement old;
+        synchronized (this)
+        {
+            old = statements.put(sql, prepstmt);
+        }
+        if (old != null)
+        {
+            closeQuietly(old);
+        }
+    }
+
+    private void clear()
+    {
+        List<PreparedStatement> closing;
+        synchronized (this)
+        {
+            closing = new ArrayList<>(statements.values());
+            statements.clear();
+        }
+        closing.forEach(StatementCache::closeQuietly);
+    }
+
+    private static void closeQuietly(PreparedStatement prepstmt)
+    {
+        try
+        {
+            prepstmt.close();
+        }
+        catch (SQLException e)
+        {
+            log.warn("failed to close cached statement", e);
+        }
+    }
+
+    /**
+     * 连接的代理，只拦截close，其他方法直接调用原连接
+     */
+    private static class Handler implements InvocationHandler
+    {
+        private final StatementCache cache;
+
+        Handler(StatementCache cache)
+        {
+            this.cache = cache;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            if ("close".equals(name) && method.getParameterCount() == 0)
+            {
+                cache.clear();
+            }
+            else if ("equals".equals(name) && method.getParameterCount() == 1)
+            {
+                return proxy == args[0];
+            }
+            else if ("hashCode".equals(name) && method.getParameterCount() == 0)
+            {
+                return System.identityHashCode(proxy);
+            }
+            try
+            {
+                return method.invoke(cache.connection, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+    }
+}
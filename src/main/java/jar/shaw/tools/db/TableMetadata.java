@@ -0,0 +1,107 @@
+package jar.shaw.tools.db;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * <p>编译期生成的实体类到表的映射元数据，由{@link TableMetadataProcessor}为{@link TableName}标注的类，
+ * 以及用{@link Generate}显式开启的类生成，类名为实体类名加TableMetadata，和实体类在同一个包中，
+ * 嵌套类的外部类名和类名之间用下划线连接，例如Outer_InnerTableMetadata</p>
+ * <p>{@link Model}和{@link DBHelper}在运行时发现生成的类后直接使用它，不再扫描字段和方法，
+ * 绑定参数和读写字段都是直接调用getter、setter，没有生成的类时仍然使用反射</p>
+ * <p>映射规则和反射的完全一致，字段没有getter并且是private时无法直接访问，这样的类不会生成元数据</p>
+ * @param <T> 实体类
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/25</p>
+ */
+public interface TableMetadata<T>
+{
+    /**
+     * 为没有{@link TableName}注解的实体类开启元数据生成，例如：{@code @TableMetadata.Generate}
+     */
+    @Retention(RetentionPolicy.CLASS)
+    @Target({ElementType.TYPE})
+    @interface Generate
+    {
+    }
+
+    /**
+     * @return 实体类
+     */
+    Class<T> entityClass();
+
+    /**
+     * @return 表名
+     */
+    String tableName();
+
+    /**
+     * @return 按字段声明顺序排列的列名
+     */
+    List<String> columnNames();
+
+    /**
+     * @return 每一列对应的字段类型
+     */
+    List<Class<?>> columnTypes();
+
+    /**
+     * @param column 列的下标，从0开始
+     * @return 该列是否由{@link KeyColumn}标注
+     */
+    boolean isKey(int column);
+
+    /**
+     * @return 不引用标识符的单行insert语句
+     */
+    String insertSQL();
+
+    /**
+     * @return MySQL的建表语句，和{@link DBHelper#buildTableSQL(Class)}的结果相同，其他方言的建表语句在运行时生成
+     */
+    String createTableSQL();
+
+    /**
+     * 调用无参构造器创建实体对象
+     * @return 实体对象
+     * @throws UnsupportedOperationException 实体类没有无参构造器
+     */
+    T newInstance();
+
+    /**
+     * @param entity 实体对象
+     * @param column 列的下标，从0开始
+     * @return 该列的值，基本类型会被装箱
+     */
+    Object get(T entity, int column);
+
+    /**
+     * @param column 列的下标，从0开始
+     * @return 该列有setter或者是非final字段时返回true
+     */
+    boolean isWritable(int column);
+
+    /**
+     * @param entity 实体对象
+     * @param column 列的下标，从0开始
+     * @param value 值，类型和字段类型一致
+     * @throws UnsupportedOperationException 该列不可写
+     */
+    void set(T entity, int column, Object value);
+
+    /**
+     * 将实体的一列绑定到语句的参数上，按字段类型调用setXxx方法，基本类型不装箱，为null时调用setNull
+     * @param prepstmt 语句
+     * @param index 参数下标，从1开始
+     * @param entity 实体对象
+     * @param column 列的下标，从0开始
+     * @throws SQLException SQLException
+     */
+    void bind(PreparedStatement prepstmt, int index, T entity, int column) throws SQLException;
+}
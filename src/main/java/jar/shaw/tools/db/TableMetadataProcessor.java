@@ -0,0 +1,597 @@
+package jar.shaw.tools.db;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * <p>编译期为实体类生成{@link TableMetadata}的注解处理器，处理{@link TableName}和{@link TableMetadata.Generate}标注的类</p>
+ * <p>处理器通过META-INF/services/javax.annotation.processing.Processor注册，实体类所在的项目依赖本库编译时自动运行。
+ * 实体类不满足直接访问的条件时（例如private字段没有getter），输出提示信息并跳过，运行时仍然使用反射</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/25</p>
+ */
+@SupportedAnnotationTypes({"jar.shaw.tools.db.TableName", "jar.shaw.tools.db.TableMetadata.Generate"})
+public class TableMetadataProcessor extends AbstractProcessor
+{
+    private static final String SUFFIX = "TableMetadata";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        Set<TypeElement> entities = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations)
+        {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
+            {
+                if (element.getKind() == ElementKind.CLASS)
+                {
+                    entities.add((TypeElement) element);
+                }
+            }
+        }
+        for (TypeElement entity : entities)
+        {
+            try
+            {
+                generate(entity);
+            }
+            catch (UnsupportedEntityException e)
+            {
+                boolean explicit = entity.getAnnotation(TableMetadata.Generate.class) != null;
+                processingEnv.getMessager().printMessage(explicit ? Diagnostic.Kind.WARNING : Diagnostic.Kind.NOTE,
+                    "no " + SUFFIX + " generated for " + entity.getQualifiedName() + ": " + e.getMessage()
+                        + ", reflection will be used at runtime", entity);
+            }
+            catch (IOException | UncheckedIOException e)
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "failed to write " + SUFFIX + " for " + entity.getQualifiedName() + ": " + e, entity);
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement entity) throws IOException
+    {
+        checkEntity(entity);
+        String packageName = packageOf(entity).getQualifiedName().toString();
+        String simpleName = flatName(entity) + SUFFIX;
+        String entityName = entity.getQualifiedName().toString();
+        TableName tableAnnotation = entity.getAnnotation(TableName.class);
+        String tableName = tableAnnotation != null ? tableAnnotation.value()
+            : MappingRules.tableName(entity.getSimpleName().toString());
+
+        List<ColumnInfo> columns = columns(entity);
+        List<String> names = new ArrayList<>();
+        List<String> sqlTypes = new ArrayList<>();
+        for (ColumnInfo column : columns)
+        {
+            names.add(column.name);
+            sqlTypes.add(MappingRules.sqlType(className(column.fieldType)));
+        }
+        String constructor = constructor(entity);
+
+        Writer writer = processingEnv.getFiler()
+            .createSourceFile(packageName.isEmpty() ? simpleName : packageName + "." + simpleName, entity)
+            .openWriter();
+        try
+        {
+            Source s = new Source(writer);
+            if (!packageName.isEmpty())
+            {
+                s.line("package " + packageName + ";").line("");
+            }
+            s.line("/**")
+                .line(" * " + entityName + "的表映射元数据，由" + TableMetadataProcessor.class.getName() + "生成，不要修改")
+                .line(" */")
+                .line("public final class " + simpleName + " implements jar.shaw.tools.db.TableMetadata<" + entityName + ">")
+                .open();
+            s.line("private static final java.util.List<String> COLUMNS = java.util.Collections.unmodifiableList(")
+                .line("    java.util.Arrays.asList(" + join(names, TableMetadataProcessor::literal) + "));")
+                .line("private static final java.util.List<Class<?>> TYPES = java.util.Collections.unmodifiableList(")
+                .line("    java.util.Arrays.<Class<?>>asList(" + join(columns, c -> erasure(c.fieldType) + ".class") + "));")
+                .line("private static final boolean[] KEYS = {" + join(columns, c -> String.valueOf(c.key)) + "};")
+                .line("private static final boolean[] WRITABLE = {" + join(columns, c -> String.valueOf(c.write != null)) + "};")
+                .line("");
+
+            s.method("public Class<" + entityName + "> entityClass()").line("return " + entityName + ".class;").close();
+            s.method("public String tableName()").line("return " + literal(tableName) + ";").close();
+            s.method("public java.util.List<String> columnNames()").line("return COLUMNS;").close();
+            s.method("public java.util.List<Class<?>> columnTypes()").line("return TYPES;").close();
+            s.method("public boolean isKey(int column)").line("return KEYS[column];").close();
+            s.method("public String insertSQL()")
+                .line("return " + literal(MappingRules.insertSQL(tableName, names)) + ";").close();
+            s.method("public String createTableSQL()")
+                .line("return " + literal(MappingRules.createTableSQL(StandardDialect.MYSQL, tableName, names, sqlTypes)) + ";")
+                .close();
+            s.method("public " + entityName + " newInstance()").line(constructor).close();
+
+            s.method("public Object get(" + entityName + " entity, int column)").line("switch (column)").open();
+            for (int i = 0; i < columns.size(); i++)
+            {
+                s.line("case " + i + ":").line("    return " + columns.get(i).read + ";");
+            }
+            s.line("default:").line("    throw new IndexOutOfBoundsException(\"column \" + column);").close().close();
+
+            s.method("public boolean isWritable(int column)").line("return WRITABLE[column];").close();
+
+            s.method("public void set(" + entityName + " entity, int column, Object value)").line("switch (column)").open();
+            for (int i = 0; i < columns.size(); i++)
+            {
+                ColumnInfo column = columns.get(i);
+                s.line("case " + i + ":");
+                if (column.write == null)
+                {
+                    s.line("    throw new UnsupportedOperationException(" + literal("column " + column.name
+                        + " of " + entityName + " is not writable") + ");");
+                }
+                else
+                {
+                    s.line("    " + column.write + ";").line("    return;");
+                }
+            }
+            s.line("default:").line("    throw new IndexOutOfBoundsException(\"column \" + column);").close().close();
+
+            s.method("public void bind(java.sql.PreparedStatement prepstmt, int index, " + entityName
+                + " entity, int column) throws java.sql.SQLException").line("switch (column)").open();
+            for (int i = 0; i < columns.size(); i++)
+            {
+                s.line("case " + i + ":");
+                bind(s, columns.get(i));
+            }
+            s.line("default:").line("    throw new IndexOutOfBoundsException(\"column \" + column);").close().close();
+            s.close();
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * 生成的类和实体类在同一个包中，实体类需要是非private的顶层类或静态嵌套类，并且没有类型参数
+     */
+    private void checkEntity(TypeElement entity)
+    {
+        if (entity.getModifiers().contains(Modifier.ABSTRACT))
+        {
+            throw new UnsupportedEntityException("class is abstract");
+        }
+        if (!entity.getTypeParameters().isEmpty())
+        {
+            throw new UnsupportedEntityException("class has type parameters");
+        }
+        Element element = entity;
+        while (element instanceof TypeElement)
+        {
+            TypeElement type = (TypeElement) element;
+            if (type.getModifiers().contains(Modifier.PRIVATE))
+            {
+                throw new UnsupportedEntityException(type.getSimpleName() + " is private");
+            }
+            if (type.getNestingKind() == NestingKind.MEMBER)
+            {
+                if (type.getKind() == ElementKind.CLASS && !type.getModifiers().contains(Modifier.STATIC)
+                    && type.getEnclosingElement().getKind() == ElementKind.CLASS)
+                {
+                    throw new UnsupportedEntityException(type.getSimpleName() + " is an inner class");
+                }
+            }
+            else if (type.getNestingKind() != NestingKind.TOP_LEVEL)
+            {
+                throw new UnsupportedEntityException("class is local or anonymous");
+            }
+            element = type.getEnclosingElement();
+        }
+    }
+
+    /**
+     * 按{@link Model}的规则收集列：本类声明的所有字段，去掉{@link ExclusiveColumn}标注的，getter和setter按名字忽略大小写匹配公共方法
+     */
+    private List<ColumnInfo> columns(TypeElement entity)
+    {
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(entity)))
+        {
+            if (method.getModifiers().contains(Modifier.PUBLIC))
+            {
+                methods.add(method);
+            }
+        }
+        List<ColumnInfo> columns = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(entity.getEnclosedElements()))
+        {
+            if (field.getAnnotation(ExclusiveColumn.class) != null)
+            {
+                continue;
+            }
+            ColumnName columnAnnotation = field.getAnnotation(ColumnName.class);
+            String fieldName = field.getSimpleName().toString();
+            ColumnInfo column = new ColumnInfo();
+            column.name = columnAnnotation != null ? columnAnnotation.value() : fieldName;
+            column.fieldType = field.asType();
+            column.key = field.getAnnotation(KeyColumn.class) != null;
+            boolean isPrivate = field.getModifiers().contains(Modifier.PRIVATE);
+
+            ExecutableElement getter = accessor(methods, "get" + fieldName, 0, fieldName);
+            if (getter != null)
+            {
+                column.read = "entity." + getter.getSimpleName() + "()";
+                column.readType = getter.getReturnType();
+            }
+            else if (!isPrivate)
+            {
+                column.read = "entity." + fieldName;
+                column.readType = field.asType();
+            }
+            else
+            {
+                throw new UnsupportedEntityException("private field " + fieldName + " has no getter");
+            }
+
+            ExecutableElement setter = accessor(methods, "set" + fieldName, 1, fieldName);
+            if (setter != null)
+            {
+                column.write = "entity." + setter.getSimpleName() + "((" + boxed(setter.getParameters().get(0).asType())
+                    + ") value)";
+            }
+            else if (field.getModifiers().contains(Modifier.FINAL))
+            {
+                column.write = null;
+            }
+            else if (!isPrivate)
+            {
+                column.write = "entity." + fieldName + " = (" + boxed(field.asType()) + ") value";
+            }
+            else
+            {
+                throw new UnsupportedEntityException("private field " + fieldName + " has no setter");
+            }
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    /**
+     * <p>查找名字忽略大小写等于name的公共方法，规则和{@link Model}一致：getter按名字匹配，setter只匹配一个参数的方法</p>
+     * <p>有多个同名方法、getter有参数或没有返回值、抛出受检异常时无法确定或直接调用，不生成元数据</p>
+     */
+    private ExecutableElement accessor(List<ExecutableElement> methods, String name, int parameters, String fieldName)
+    {
+        ExecutableElement found = null;
+        for (ExecutableElement method : methods)
+        {
+            if (!method.getSimpleName().toString().equalsIgnoreCase(name)
+                || (parameters == 1 && method.getParameters().size() != 1))
+            {
+                continue;
+            }
+            if (found != null)
+            {
+                throw new UnsupportedEntityException("ambiguous accessor " + name + " for field " + fieldName);
+            }
+            found = method;
+        }
+        if (found != null && (found.getParameters().size() != parameters || !found.getThrownTypes().isEmpty()
+            || (parameters == 0 && found.getReturnType().getKind() == TypeKind.VOID)))
+        {
+            throw new UnsupportedEntityException("accessor " + found + " for field " + fieldName
+                + " can not be called directly");
+        }
+        return found;
+    }
+
+    private String constructor(TypeElement entity)
+    {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(entity.getEnclosedElements()))
+        {
+            if (constructor.getParameters().isEmpty())
+            {
+                if (constructor.getModifiers().contains(Modifier.PRIVATE) || !constructor.getThrownTypes().isEmpty())
+                {
+                    throw new UnsupportedEntityException("no-arg constructor can not be called directly");
+                }
+                return "return new " + entity.getQualifiedName() + "();";
+            }
+        }
+        return "throw new UnsupportedOperationException(" + literal(entity.getQualifiedName()
+            + " must have a no-arg constructor to be read from database") + ");";
+    }
+
+    /**
+     * 按{@link EntityMapper}中参数绑定的规则生成一列的绑定代码
+     */
+    private void bind(Source s, ColumnInfo column)
+    {
+        String type = erasure(column.readType);
+        switch (type)
+        {
+            case "long":
+                s.line("    prepstmt.setLong(index, " + column.read + ");");
+                break;
+            case "int":
+                s.line("    prepstmt.setInt(index, " + column.read + ");");
+                break;
+            case "double":
+                s.line("    prepstmt.setDouble(index, " + column.read + ");");
+                break;
+            case "float":
+                s.line("    prepstmt.setFloat(index, " + column.read + ");");
+                break;
+            case "short":
+                s.line("    prepstmt.setShort(index, " + column.read + ");");
+                break;
+            case "byte":
+                s.line("    prepstmt.setByte(index, " + column.read + ");");
+                break;
+            case "boolean":
+                s.line("    prepstmt.setBoolean(index, " + column.read + ");");
+                break;
+            case "java.lang.String":
+                nullable(s, column, type, "VARCHAR", "prepstmt.setString(index, v)");
+                return;
+            case "java.lang.Long":
+                nullable(s, column, type, "BIGINT", "prepstmt.setLong(index, v)");
+                return;
+            case "java.lang.Integer":
+                nullable(s, column, type, "INTEGER", "prepstmt.setInt(index, v)");
+                return;
+            case "java.lang.Double":
+                nullable(s, column, type, "DOUBLE", "prepstmt.setDouble(index, v)");
+                return;
+            case "java.lang.Float":
+                nullable(s, column, type, "REAL", "prepstmt.setFloat(index, v)");
+                return;
+            case "java.lang.Short":
+                nullable(s, column, type, "SMALLINT", "prepstmt.setShort(index, v)");
+                return;
+            case "java.lang.Byte":
+                nullable(s, column, type, "TINYINT", "prepstmt.setByte(index, v)");
+                return;
+            case "java.lang.Boolean":
+                nullable(s, column, type, "BOOLEAN", "prepstmt.setBoolean(index, v)");
+                return;
+            case "java.math.BigDecimal":
+                nullable(s, column, type, "DECIMAL", "prepstmt.setBigDecimal(index, v)");
+                return;
+            case "java.sql.Date":
+                nullable(s, column, type, "DATE", "prepstmt.setDate(index, v)");
+                return;
+            case "java.sql.Time":
+                nullable(s, column, type, "TIME", "prepstmt.setTime(index, v)");
+                return;
+            case "java.sql.Timestamp":
+                nullable(s, column, type, "TIMESTAMP", "prepstmt.setTimestamp(index, v)");
+                return;
+            case "java.util.Date":
+                nullable(s, column, type, "TIMESTAMP", "prepstmt.setTimestamp(index, new java.sql.Timestamp(v.getTime()))");
+                return;
+            case "byte[]":
+                nullable(s, column, type, "VARBINARY", "prepstmt.setBytes(index, v)");
+                return;
+            default:
+                s.line("    prepstmt.setObject(index, " + column.read + ");");
+        }
+        s.line("    return;");
+    }
+
+    private static void nullable(Source s, ColumnInfo column, String type, String sqlType, String set)
+    {
+        s.line("{").line("    " + type + " v = " + column.read + ";").line("    if (v == null)").line("    {")
+            .line("        prepstmt.setNull(index, java.sql.Types." + sqlType + ");").line("    }").line("    else")
+            .line("    {").line("        " + set + ";").line("    }").line("    return;").line("}");
+    }
+
+    private PackageElement packageOf(Element element)
+    {
+        while (!(element instanceof PackageElement))
+        {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    /**
+     * 嵌套类的外部类名和类名用下划线连接，和运行时查找生成类的规则一致
+     */
+    private static String flatName(TypeElement entity)
+    {
+        String name = entity.getSimpleName().toString();
+        Element enclosing = entity.getEnclosingElement();
+        while (enclosing instanceof TypeElement)
+        {
+            name = enclosing.getSimpleName() + "_" + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name;
+    }
+
+    private String erasure(TypeMirror type)
+    {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private String boxed(TypeMirror type)
+    {
+        return type.getKind().isPrimitive()
+            ? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString()
+            : erasure(type);
+    }
+
+    /**
+     * @return 和{@link Class#getName()}格式一致的类名，用于查找SQL类型
+     */
+    private String className(TypeMirror type)
+    {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased.getKind() == TypeKind.DECLARED)
+        {
+            TypeElement element = (TypeElement) ((DeclaredType) erased).asElement();
+            return processingEnv.getElementUtils().getBinaryName(element).toString();
+        }
+        return erased.toString();
+    }
+
+    private static <E> String join(List<E> items, Function<E, String> mapper)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (E item : items)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(mapper.apply(item));
+        }
+        return sb.toString();
+    }
+
+    private static String literal(CharSequence value)
+    {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e)
+                    {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static class ColumnInfo
+    {
+        String name;
+        TypeMirror fieldType;
+        boolean key;
+        String read;
+        TypeMirror readType;
+        String write;
+    }
+
+    /**
+     * 实体类无法生成元数据的原因
+     */
+    private static class UnsupportedEntityException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedEntityException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * 按本库的代码风格输出源码，open和close成对调用，负责花括号和缩进
+     */
+    private static class Source
+    {
+        private final Writer writer;
+        private int depth;
+        private boolean firstMember = true;
+
+        Source(Writer writer)
+        {
+            this.writer = writer;
+        }
+
+        Source line(String line)
+        {
+            try
+            {
+                for (int i = 0; i < depth && !line.isEmpty(); i++)
+                {
+                    writer.write("    ");
+                }
+                writer.write(line);
+                writer.write('\n');
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        Source open()
+        {
+            line("{");
+            depth++;
+            return this;
+        }
+
+        Source close()
+        {
+            depth--;
+            return line("}");
+        }
+
+        Source method(String signature)
+        {
+            if (!firstMember && !signature.isEmpty())
+            {
+                line("");
+            }
+            firstMember = false;
+            line("@Override");
+            line(signature);
+            return open();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package jar.shaw.tools.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>按线程缓存可重用的缓冲区，每个线程各缓存一个堆数组和一个直接缓冲区，取出和归还都不需要同步</p>
+ * <p>{@link #acquireHeap(int)}和{@link #acquireDirect(int)}从当前线程取出缓存的缓冲区，容量不够时新建一个，
+ * 新建的容量向上取整到2的幂，以便之后的请求可以复用。用完后用{@link #release(byte[])}或{@link #release(ByteBuffer)}归还，
+ * 线程缓存为空或归还的更大时替换缓存。取出后缓存即为空，同一线程嵌套使用时内层会新建，不会拿到同一个缓冲区。
+ * 超过{@link #MAX_POOLED_SIZE}的缓冲区不缓存，所以每个线程最多占用2MB，其中一半是堆外内存</p>
+ * 例如：
+ * <pre>
+ *     byte[] buffer = BufferPool.acquireHeap(8192);
+ *     try
+ *     {
+ *         ...
+ *     }
+ *     finally
+ *     {
+ *         BufferPool.release(buffer);
+ *     }
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/10/3</p>
+ */
+public final class BufferPool
+{
+    /**
+     * 缓存的缓冲区的最大容量，1MB
+     */
+    public static final int MAX_POOLED_SIZE = 1 << 20;
+
+    /**
+     * 新建缓冲区的最小容量
+     */
+    private static final int MIN_SIZE = 4 * 1024;
+
+    private static final ThreadLocal<byte[]> HEAP = new ThreadLocal<>();
+    private static final ThreadLocal<ByteBuffer> DIRECT = new ThreadLocal<>();
+
+    private BufferPool()
+    {
+    }
+
+    /**
+     * 取出一个长度不小于minSize的数组，内容是上次使用留下的数据
+     * @param minSize 最小长度
+     * @return 堆数组，用完后归还
+     */
+    public static byte[] acquireHeap(int minSize)
+    {
+        byte[] cached = HEAP.get();
+        if (cached != null && cached.length >= minSize)
+        {
+            HEAP.set(null);
+            return cached;
+        }
+        return new byte[capacity(minSize)];
+    }
+
+    /**
+     * 归还数组，之后不能再使用
+     * @param buffer {@link #acquireHeap(int)}取出的数组，为null时忽略
+     */
+    public static void release(byte[] buffer)
+    {
+        if (buffer == null || buffer.length > MAX_POOLED_SIZE)
+        {
+            return;
+        }
+        byte[] cached = HEAP.get();
+        if (cached == null || cached.length < buffer.length)
+        {
+            HEAP.set(buffer);
+        }
+    }
+
+    /**
+     * 取出一个容量不小于minCapacity的直接缓冲区，position为0，limit为容量
+     * @param minCapacity 最小容量
+     * @return 直接缓冲区，用完后归还
+     */
+    public static ByteBuffer acquireDirect(int minCapacity)
+    {
+        ByteBuffer cached = DIRECT.get();
+        if (cached != null && cached.capacity() >= minCapacity)
+        {
+            DIRECT.set(null);
+            cached.clear();
+            return cached;
+        }
+        return ByteBuffer.allocateDirect(capacity(minCapacity));
+    }
+
+    /**
+     * 归还直接缓冲区，之后不能再使用，也不能再使用它的duplicate或slice
+     * @param buffer {@link #acquireDirect(int)}取出的缓冲区，为null或不是直接缓冲区时忽略
+     */
+    public static void release(ByteBuffer buffer)
+    {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() > MAX_POOLED_SIZE)
+        {
+            return;
+        }
+        ByteBuffer cached = DIRECT.get();
+        if (cached == null || cached.capacity() < buffer.capacity())
+        {
+            DIRECT.set(buffer);
+        }
+    }
+
+    /**
+     * 向上取整到2的幂，不小于MIN_SIZE，超过缓存上限时按原大小分配
+     */
+    private static int capacity(int minSize)
+    {
+        if (minSize < 0)
+        {
+            throw new IllegalArgumentException("size must not be negative: " + minSize);
+        }
+        if (minSize <= MIN_SIZE)
+        {
+            return MIN_SIZE;
+        }
+        if (minSize > MAX_POOLED_SIZE)
+        {
+            return minSize;
+        }
+        return Integer.highestOneBit(minSize - 1) << 1;
+    }
+}
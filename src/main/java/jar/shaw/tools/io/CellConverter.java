@@ -0,0 +1,448 @@
+package jar.shaw.tools.io;
+
+import jar.shaw.tools.util.DateUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/**
+ * <p>单元格和字段值之间的转换器，在建立字段和列的对应关系时按字段类型选定，读写每一行时不再判断字段类型</p>
+ * <p>从{@link Cell}读取时直接按单元格类型取值，数字和日期不经过字符串，也不修改工作簿；
+ * 从文本读取用于事件API和CSV，文本的规则见{@link ExcelEventReader}。空单元格和空文本转换为null，基本类型的字段保持默认值</p>
+ * <p>写入时数字、布尔和日期都写为对应类型的单元格，日期需要的格式由{@link #dataFormat()}给出，由写入方按类型缓存样式；
+ * 写为文本时保留完整的精度，布尔值为TRUE或FALSE，日期为yyyy-MM-dd HH:mm:ss</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/28</p>
+ */
+enum CellConverter
+{
+    STRING
+        {
+            @Override
+            Object fromCell(Cell cell)
+            {
+                int type = cellType(cell);
+                switch (type)
+                {
+                    case Cell.CELL_TYPE_STRING:
+                        return cell.getStringCellValue();
+                    case Cell.CELL_TYPE_NUMERIC:
+                        return NumberToTextConverter.toText(cell.getNumericCellValue());
+                    case Cell.CELL_TYPE_BOOLEAN:
+                        return cell.getBooleanCellValue() ? "TRUE" : "FALSE";
+                    case Cell.CELL_TYPE_ERROR:
+                        return FormulaError.forInt(cell.getErrorCellValue()).getString();
+                    default:
+                        return "";
+                }
+            }
+
+            @Override
+            Object fromText(String text)
+            {
+                return text;
+            }
+
+            @Override
+            void write(Cell cell, Object value)
+            {
+                cell.setCellValue((String) value);
+            }
+        },
+    INT
+        {
+            @Override
+            Object fromCell(Cell cell)
+            {
+                Double value = number(cell);
+                return value == null ? null : Math.toIntExact(integral(value));
+            }
+
+            @Override
+            Object fromText(String text)
+            {
+                return isEmpty(text) ? null : Math.toIntExact(integral(Double.parseDouble(text.trim())));
+            }
+
+            @Override
+            void write(Cell cell, Object value)
+            {
+                cell.setCellValue(((Number) value).doubleValue());
+            }
+        },
+    LONG
+        {
+            @Override
+            Object fromCell(Cell cell)
+            {
+                Double value = number(cell);
+                return value == null ? null : integral(value);
+            }
+
+            @Override
+            Object fromText(String text)
+            {
+                return isEmpty(text) ? null : integral(Double.parseDouble(text.trim()));
+            }
+
+            @Override
+            void write(Cell cell, Object value)
+            {
+                cell.setCellValue(((Number) value).doubleValue());
+            }
+        },
+    DOUBLE
+        {
+            @Override
+            Object fromCell(Cell cell)
+            {
+                return number(cell);
+            }
+
+            @Override
+            Object fromText(String text)
+            {
+                return isEmpty(text) ? null : Double.parseDouble(text.trim());
+            }
+
+            @Override
+            void write(Cell cell, Object value)
+            {
+                cell.setCellValue(((Number) value).doubleValue());
+            }
+        },
+    BIG_DECIMAL
+        {
+            @Override
+            Object fromCell(Cell cell)
+            {
+                if (cellType(cell) == Cell.CELL_TYPE_STRING)
+                {
+                    return fromText(cell.getStringCellValue());
+                }
+                Double value = number(cell);
+                //按Excel显示的有效数字构造，避免0.1变成0.1000000000000000055511151231257827
+                return value == null ? null : new BigDecimal(NumberToTextConverter.toText(value));
+            }
+
+            @Override
+            Object fromText(String text)
+            {
+                return isEmpty(text) ? null : new BigDecimal(text.trim());
+            }
+
+            @Override
+            void write(Cell cell, Object value)
+            {
+                cell.setCellValue(((Number) value).doubleValue());
+            }
+
+            @Override
+            String toText(Object value)
+            {
+                return ((BigDecimal) value).toPlainString();
+            }
+        },
+    BOOLEAN
+        {
+            @Override
+            Object fromCell(Cell cell)
+            {
+                switch (cellType(cell))
+                {
+                    case Cell.CELL_TYPE_BOOLEAN:
+                        return cell.getBooleanCellValue();
+                    case Cell.CELL_TYPE_NUMERIC:
+                        return cell.getNumericCellValue() != 0;
+                    case Cell.CELL_TYPE_STRING:
+                        return fromText(cell.getStringCellValue());
+                    default:
+                        return null;
+                }
+            }
+
+            @Override
+            Object fromText(String text)
+            {
+                if (isEmpty(text))
+                {
+                    return null;
+                }
+                String value = text.trim();
+                if ("TRUE".equalsIgnoreCase(value) || "1".equals(value))
+                {
+                    return Boolean.TRUE;
+                }
+                if ("FALSE".equalsIgnoreCase(value) || "0".equals(value))
+                {
+                    return Boolean.FALSE;
+                }
+                throw new IllegalArgumentException("not a boolean: " + text);
+            }
+
+            @Override
+            void write(Cell cell, Object value)
+            {
+                cell.setCellValue((Boolean) value);
+            }
+
+            @Override
+            String toText(Object value)
+            {
+                return (Boolean) value ? "TRUE" : "FALSE";
+            }
+        },
+    DATE
+        {
+            @Override
+            Object fromCell(Cell cell)
+            {
+                switch (cellType(cell))
+                {
+                    case Cell.CELL_TYPE_NUMERIC:
+                        //getDateCellValue会处理1904日期系统
+                        return cell.getDateCellValue();
+                    case Cell.CELL_TYPE_STRING:
+                        return fromText(cell.getStringCellValue());
+                    default:
+                        return null;
+                }
+            }
+
+            @Override
+            Object fromText(String text)
+            {
+                if (isEmpty(text))
+                {
+                    return null;
+                }
+                String value = text.trim();
+                //写入时使用的格式不经过DateUtils的正则匹配
+                try
+                {
+                    if (value.length() == 19 && value.charAt(4) == '-' && value.charAt(10) == ' ')
+                    {
+                        return Date.from(LocalDateTime.parse(value, DATE_TIME).atZone(ZoneId.systemDefault()).toInstant());
+                    }
+                    if (value.length() == 10 && value.charAt(4) == '-' && value.charAt(7) == '-')
+                    {
+                        return Date.from(LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant());
+                    }
+                }
+                catch (DateTimeParseException e)
+                {
+                    //交给DateUtils
+                }
+                return DateUtils.getDateFromString(value);
+            }
+
+            @Override
+            Object fromNumericText(String text)
+            {
+                return DateUtil.getJavaDate(Double.parseDouble(text.trim()));
+            }
+
+            @Override
+            void write(Cell cell, Object value)
+            {
+                cell.setCellValue((Date) value);
+            }
+
+            @Override
+            String dataFormat()
+            {
+                return "yyyy-mm-dd hh:mm:ss";
+            }
+
+            @Override
+            String toText(Object value)
+            {
+                return DATE_TIME.format(((Date) value).toInstant().atZone(ZoneId.systemDefault()));
+            }
+        },
+    LOCAL_DATE
+        {
+            @Override
+            Object fromCell(Cell cell)
+            {
+                return localDate((Date) DATE.fromCell(cell));
+            }
+
+            @Override
+            Object fromText(String text)
+            {
+                return localDate((Date) DATE.fromText(text));
+            }
+
+            @Override
+            Object fromNumericText(String text)
+            {
+                return localDate((Date) DATE.fromNumericText(text));
+            }
+
+            @Override
+            void write(Cell cell, Object value)
+            {
+                cell.setCellValue(Date.from(((LocalDate) value).atStartOfDay(ZoneId.systemDefault()).toInstant()));
+            }
+
+            @Override
+            String dataFormat()
+            {
+                return "yyyy-mm-dd";
+            }
+        };
+
+    /**
+     * 日期写为文本的格式，读取时优先按这个格式解析
+     */
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * @param cell 单元格，不为null
+     * @return 字段值，空单元格为null
+     */
+    abstract Object fromCell(Cell cell);
+
+    /**
+     * @param text 单元格文本，可以为null
+     * @return 字段值，空文本为null
+     */
+    abstract Object fromText(String text);
+
+    /**
+     * 从数字单元格的文本读取，日期字段按Excel的日期序号解析，其他类型同{@link #fromText(String)}。
+     * 只有确定来自数字单元格时才能使用，文本中的20190930是日期而不是序号
+     * @param text 数字单元格的文本，不为null
+     * @return 字段值
+     */
+    Object fromNumericText(String text)
+    {
+        return fromText(text);
+    }
+
+    /**
+     * @param cell 新建的单元格
+     * @param value 字段值，不为null
+     */
+    abstract void write(Cell cell, Object value);
+
+    /**
+     * @return 写入时单元格需要的数据格式，不需要时为null
+     */
+    String dataFormat()
+    {
+        return null;
+    }
+
+    /**
+     * 转为文本，用于CSV等文本格式，得到的文本可以由{@link #fromText(String)}还原，日期精确到秒
+     * @param value 字段值，不为null
+     * @return 文本
+     */
+    String toText(Object value)
+    {
+        return value.toString();
+    }
+
+    /**
+     * 按字段类型选择转换器
+     * @param type 字段类型
+     * @return 转换器
+     * @throws IllegalArgumentException 不支持的类型
+     */
+    static CellConverter of(Class<?> type)
+    {
+        if (type == String.class)
+        {
+            return STRING;
+        }
+        if (type == int.class || type == Integer.class)
+        {
+            return INT;
+        }
+        if (type == long.class || type == Long.class)
+        {
+            return LONG;
+        }
+        if (type == double.class || type == Double.class)
+        {
+            return DOUBLE;
+        }
+        if (type == BigDecimal.class)
+        {
+            return BIG_DECIMAL;
+        }
+        if (type == boolean.class || type == Boolean.class)
+        {
+            return BOOLEAN;
+        }
+        if (type == Date.class)
+        {
+            return DATE;
+        }
+        if (type == LocalDate.class)
+        {
+            return LOCAL_DATE;
+        }
+        throw new IllegalArgumentException("unsupported field type for excel: " + type.getName());
+    }
+
+    /**
+     * @return 单元格的类型，公式取缓存结果的类型
+     */
+    private static int cellType(Cell cell)
+    {
+        int type = cell.getCellType();
+        return type == Cell.CELL_TYPE_FORMULA ? cell.getCachedFormulaResultType() : type;
+    }
+
+    /**
+     * @return 数字单元格的值，文本单元格按数字解析，空单元格为null
+     */
+    private static Double number(Cell cell)
+    {
+        switch (cellType(cell))
+        {
+            case Cell.CELL_TYPE_NUMERIC:
+                return cell.getNumericCellValue();
+            case Cell.CELL_TYPE_STRING:
+                String text = cell.getStringCellValue();
+                return isEmpty(text) ? null : Double.parseDouble(text.trim());
+            case Cell.CELL_TYPE_BLANK:
+                return null;
+            default:
+                throw new IllegalArgumentException("not a number: " + cell);
+        }
+    }
+
+    private static long integral(double value)
+    {
+        long result = (long) value;
+        if (result != value)
+        {
+            throw new IllegalArgumentException("not an integer: " + NumberToTextConverter.toText(value));
+        }
+        return result;
+    }
+
+    private static boolean isEmpty(String text)
+    {
+        return text == null || text.trim().isEmpty();
+    }
+
+    private static LocalDate localDate(Date date)
+    {
+        return date == null ? null : date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
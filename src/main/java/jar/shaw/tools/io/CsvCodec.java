@@ -0,0 +1,700 @@
+package jar.shaw.tools.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static jar.shaw.tools.util.ExceptionHelper.runtime;
+
+/**
+ * <p>CSV文件和对象之间的读写，列的映射和Excel相同：由{@link ExcelHelper.ExcelTitle}指定列名，第一行为标题行，
+ * 字段类型的支持范围和文本转换规则见{@link CellConverter}，没有任何字符的空行会被跳过</p>
+ * <p>格式按RFC 4180：字段中有分隔符、引号或换行时用引号包围，引号写两次；写入的换行为CRLF，读取时CRLF和LF都可以。
+ * 读取不按行split，而是从{@link FileChannel}读入{@link ByteBuffer}后逐字节走状态机，
+ * 普通字符成段复制，一个字段结束时才解码为String。分隔符、引号和换行都是ASCII字符，
+ * 所以只支持UTF-8、GBK等兼容ASCII的编码，多字节字符中不会出现这些字节。UTF-8的BOM会被忽略</p>
+ * <p>{@link #read(Path, Consumer)}和{@link #stream(Path)}逐行读取，内存占用和文件大小无关；
+ * {@link #readParallel(Path, int)}先按引号的奇偶扫描一遍文件，在引号外的换行处把文件切成若干块，再由多个线程并行解析，
+ * 结果按行的顺序合并</p>
+ * 例如：
+ * <pre>
+ *     new CsvCodec&lt;&gt;(Order.class).write(path, orders.iterator());
+ *     List&lt;Order&gt; orders = new CsvCodec&lt;&gt;(Order.class).charset(Charset.forName("GBK")).readParallel(path, 4);
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/30</p>
+ */
+public class CsvCodec<T>
+{
+    private static Logger log = LoggerFactory.getLogger(CsvCodec.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 并行读取时每块的最小字节数，块太小时线程调度的开销超过解析
+     */
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final Class<T> clazz;
+    private final List<Field> fields = new ArrayList<>();
+    private final List<String> titles = new ArrayList<>();
+    private final List<CellConverter> converters = new ArrayList<>();
+    private Charset charset = StandardCharsets.UTF_8;
+    private byte delimiter = ',';
+    private byte quote = '"';
+
+    /**
+     * @param clazz 对象类型，需要有无参构造器，至少有一个{@link ExcelHelper.ExcelTitle}标注的字段
+     */
+    public CsvCodec(Class<T> clazz)
+    {
+        this.clazz = clazz;
+        for (Field field : clazz.getDeclaredFields())
+        {
+            ExcelHelper.ExcelTitle annotation = field.getAnnotation(ExcelHelper.ExcelTitle.class);
+            if (annotation != null)
+            {
+                field.setAccessible(true);
+                fields.add(field);
+                titles.add(annotation.value());
+                converters.add(CellConverter.of(field.getType()));
+            }
+        }
+        if (fields.isEmpty())
+        {
+            throw new IllegalArgumentException("no @ExcelTitle field declared in " + clazz.getName());
+        }
+    }
+
+    /**
+     * @param charset 文件编码，必须兼容ASCII，默认UTF-8
+     * @return this
+     */
+    public CsvCodec<T> charset(Charset charset)
+    {
+        if (!Arrays.equals(",\"\r\n".getBytes(charset), ",\"\r\n".getBytes(StandardCharsets.US_ASCII)))
+        {
+            throw new IllegalArgumentException("charset not compatible with ASCII: " + charset);
+        }
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * @param delimiter 分隔符，必须是ASCII字符，默认为逗号
+     * @return this
+     */
+    public CsvCodec<T> delimiter(char delimiter)
+    {
+        this.delimiter = ascii(delimiter);
+        return this;
+    }
+
+    /**
+     * @param quote 引号，必须是ASCII字符，默认为双引号
+     * @return this
+     */
+    public CsvCodec<T> quote(char quote)
+    {
+        this.quote = ascii(quote);
+        return this;
+    }
+
+    private static byte ascii(char c)
+    {
+        if (c == 0 || c > 0x7F || c == CR || c == LF)
+        {
+            throw new IllegalArgumentException("not a printable ascii char: " + (int) c);
+        }
+        return (byte) c;
+    }
+
+    /**
+     * 逐行读取CSV，每解析完一行就映射为对象交给consumer
+     * @param path CSV文件
+     * @param consumer 对象的消费者
+     * @return 读取的数据行数
+     */
+    public long read(Path path, Consumer<? super T> consumer)
+    {
+        return runtime(() -> {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                Parser parser = new Parser(channel, 0, channel.size());
+                List<ExcelHelper.ColumnMapping> columns = header(parser);
+                long rows = 0;
+                while (parser.next())
+                {
+                    consumer.accept(toObject(parser, columns));
+                    rows++;
+                }
+                log.info("success load " + rows + " rows from csv: " + path);
+                return rows;
+            }
+        });
+    }
+
+    /**
+     * 以流的形式逐行读取CSV，在消费流的线程中解析，不需要后台线程。流需要关闭以释放文件，建议用try-with-resource
+     * @param path CSV文件
+     * @return 延迟读取的对象流
+     */
+    public Stream<T> stream(Path path)
+    {
+        return runtime(() -> {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            try
+            {
+                Parser parser = new Parser(channel, 0, channel.size());
+                List<ExcelHelper.ColumnMapping> columns = header(parser);
+                Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL)
+                {
+                    @Override
+                    public boolean tryAdvance(Consumer<? super T> action)
+                    {
+                        if (!runtime(parser::next))
+                        {
+                            return false;
+                        }
+                        action.accept(toObject(parser, columns));
+                        return true;
+                    }
+                };
+                return StreamSupport.stream(rows, false).onClose(() -> runtime(channel::close));
+            }
+            catch (Exception e)
+            {
+                channel.close();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * 把文件切成在引号外的换行处对齐的块，由多个线程并行解析，适合几百MB以上的大文件。
+     * 切块需要先顺序扫描一遍文件，扫描只跟踪是否在引号中，比解析快得多
+     * @param path CSV文件
+     * @param parallelism 解析线程数
+     * @return 按行的顺序排列的对象
+     */
+    public List<T> readParallel(Path path, int parallelism)
+    {
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        return runtime(() -> {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                Parser headerParser = new Parser(channel, 0, channel.size());
+                List<ExcelHelper.ColumnMapping> columns = header(headerParser);
+                long[] bounds = chunks(channel, headerParser.position(), parallelism * 4);
+                AtomicInteger threadIndex = new AtomicInteger();
+                ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+                    Thread thread = new Thread(r, "csv-reader-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                try
+                {
+                    List<Future<List<T>>> chunks = new ArrayList<>();
+                    for (int i = 0; i + 1 < bounds.length; i++)
+                    {
+                        long start = bounds[i];
+                        long end = bounds[i + 1];
+                        chunks.add(executor.submit(() -> {
+                            //FileChannel的按位置读取可以在多个线程中同时进行
+                            Parser parser = new Parser(channel, start, end);
+                            List<T> rows = new ArrayList<>();
+                            while (parser.next())
+                            {
+                                rows.add(toObject(parser, columns));
+                            }
+                            return rows;
+                        }));
+                    }
+                    List<T> result = new ArrayList<>();
+                    for (Future<List<T>> chunk : chunks)
+                    {
+                        try
+                        {
+                            result.addAll(chunk.get());
+                        }
+                        catch (ExecutionException e)
+                        {
+                            //抛出解析线程中的原始异常
+                            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                        }
+                    }
+                    log.info("success load " + result.size() + " rows in " + chunks.size() + " chunks from csv: " + path);
+                    return result;
+                }
+                finally
+                {
+                    executor.shutdownNow();
+                }
+            }
+        });
+    }
+
+    /**
+     * 从start开始顺序扫描，按和{@link Parser}相同的规则判断是否在引号中：只有字段开头的引号开始引号部分，
+     * 没有引号的字段中的引号是普通字符。在每个目标位置之后第一个引号外的LF处切开
+     * @return 块的边界，第一个为start，最后一个为文件长度
+     */
+    private long[] chunks(FileChannel channel, long start, int maxChunks) throws IOException
+    {
+        long size = channel.size();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, (size - start) / maxChunks + 1);
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        long target = start + chunkSize;
+        int state = Parser.FIELD_START;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        long position = start;
+        while (target < size)
+        {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0)
+            {
+                break;
+            }
+            for (int i = 0; i < n; i++)
+            {
+                byte b = bytes[i];
+                if (state == Parser.QUOTED)
+                {
+                    if (b == quote)
+                    {
+                        state = Parser.QUOTE_IN_QUOTED;
+                    }
+                }
+                else if (b == quote)
+                {
+                    //字段开头的引号和转义的引号回到引号中，没有引号的字段中的引号是普通字符
+                    state = state == Parser.UNQUOTED ? Parser.UNQUOTED : Parser.QUOTED;
+                }
+                else if (b == delimiter)
+                {
+                    state = Parser.FIELD_START;
+                }
+                else if (b == LF || b == CR)
+                {
+                    state = Parser.FIELD_START;
+                    if (b == LF && position + i >= target)
+                    {
+                        long bound = position + i + 1;
+                        bounds.add(bound);
+                        target = bound + chunkSize;
+                    }
+                }
+                else
+                {
+                    state = Parser.UNQUOTED;
+                }
+            }
+            position += n;
+        }
+        if (bounds.get(bounds.size() - 1) < size)
+        {
+            bounds.add(size);
+        }
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 读取标题行，建立字段和列的对应关系
+     */
+    private List<ExcelHelper.ColumnMapping> header(Parser parser) throws IOException
+    {
+        if (!parser.next())
+        {
+            throw new IllegalArgumentException("csv file is empty");
+        }
+        Map<String, Integer> titleNameToIndex = new HashMap<>();
+        for (int i = 0; i < parser.width; i++)
+        {
+            String title = parser.cells[i];
+            if (i == 0 && title != null && title.startsWith("\uFEFF"))
+            {
+                title = title.substring(1);
+            }
+            titleNameToIndex.put(title, i);
+        }
+        return ExcelHelper.getFieldIndex(clazz, titleNameToIndex);
+    }
+
+    private T toObject(Parser parser, List<ExcelHelper.ColumnMapping> columns)
+    {
+        T object = runtime(clazz::newInstance);
+        for (ExcelHelper.ColumnMapping column : columns)
+        {
+            if (column.index < parser.width)
+            {
+                column.set(object, column.converter.fromText(parser.cells[column.index]));
+            }
+        }
+        return object;
+    }
+
+    /**
+     * 将对象逐行写入CSV文件，文件已存在时覆盖，第一行为标题行，null值写为空字段
+     * @param path 文件路径
+     * @param objects 要写入的对象
+     * @return 写入的数据行数，不包括标题行
+     */
+    public long write(Path path, Iterator<? extends T> objects)
+    {
+        return runtime(() -> {
+            int columns = fields.size();
+            Field[] fields = this.fields.toArray(new Field[columns]);
+            CellConverter[] converters = this.converters.toArray(new CellConverter[columns]);
+            CharsetEncoder encoder = charset.newEncoder();
+            ByteBuffer buffer = BufferPool.acquireDirect(BUFFER_SIZE);
+            StringBuilder line = new StringBuilder(256);
+            long rows = 0;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                for (int i = 0; i < columns; i++)
+                {
+                    if (i > 0)
+                    {
+                        line.append((char) delimiter);
+                    }
+                    appendField(line, titles.get(i));
+                }
+                encode(encoder, CharBuffer.wrap(line.append("\r\n")), buffer, channel);
+                while (objects.hasNext())
+                {
+                    T object = objects.next();
+                    line.setLength(0);
+                    for (int i = 0; i < columns; i++)
+                    {
+                        if (i > 0)
+                        {
+                            line.append((char) delimiter);
+                        }
+                        Object value = fields[i].get(object);
+                        if (value != null)
+                        {
+                            appendField(line, converters[i].toText(value));
+                        }
+                    }
+                    encode(encoder, CharBuffer.wrap(line.append("\r\n")), buffer, channel);
+                    rows++;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+            }
+            finally
+            {
+                BufferPool.release(buffer);
+            }
+            log.info("success write " + rows + " rows to csv: " + path);
+            return rows;
+        });
+    }
+
+    /**
+     * 字段中有分隔符、引号或换行时用引号包围，引号写两次。空字符串写为""，以便和null区分
+     */
+    private void appendField(StringBuilder line, String text)
+    {
+        boolean needQuote = false;
+        for (int i = 0; i < text.length() && !needQuote; i++)
+        {
+            char c = text.charAt(i);
+            needQuote = c == delimiter || c == quote || c == CR || c == LF;
+        }
+        if (!needQuote && !text.isEmpty())
+        {
+            line.append(text);
+            return;
+        }
+        char q = (char) quote;
+        line.append(q);
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c == q)
+            {
+                line.append(q);
+            }
+            line.append(c);
+        }
+        line.append(q);
+    }
+
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer buffer, FileChannel channel)
+        throws IOException
+    {
+        encoder.reset();
+        while (true)
+        {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isUnderflow())
+            {
+                return;
+            }
+            if (result.isOverflow())
+            {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+            else
+            {
+                result.throwException();
+            }
+        }
+    }
+
+    /**
+     * 按字节解析文件中[start, end)范围内的记录，start必须是一行的开始。状态机的状态在缓冲区之间保留，
+     * 所以字段和记录可以跨越缓冲区的边界
+     */
+    private final class Parser
+    {
+        private static final int FIELD_START = 0;
+        private static final int UNQUOTED = 1;
+        private static final int QUOTED = 2;
+        /**
+         * 引号中又遇到引号，下一个字节是引号时为转义，否则字段的引号部分结束
+         */
+        private static final int QUOTE_IN_QUOTED = 3;
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final byte[] bytes = buffer.array();
+        private int pos;
+        private int limit;
+        private byte[] field = new byte[256];
+        private int fieldLength;
+        private boolean quotedField;
+        /**
+         * 当前记录按列号存放的字段，数组会被复用，没有引号的空字段为null
+         */
+        private String[] cells = new String[16];
+        private int width;
+
+        Parser(FileChannel channel, long start, long end)
+        {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        /**
+         * @return 已经消费到的文件位置
+         */
+        long position()
+        {
+            return position - (limit - pos);
+        }
+
+        /**
+         * 解析下一条非空记录，字段放在cells的前width个元素中
+         * @return 文件结束时返回false
+         */
+        boolean next() throws IOException
+        {
+            width = 0;
+            fieldLength = 0;
+            int state = FIELD_START;
+            byte delimiter = CsvCodec.this.delimiter;
+            byte quote = CsvCodec.this.quote;
+            while (true)
+            {
+                if (pos == limit && !fill())
+                {
+                    if (state == QUOTED)
+                    {
+                        throw new IOException("unclosed quote at the end of csv, position " + position);
+                    }
+                    if (state == FIELD_START && width == 0)
+                    {
+                        return false;
+                    }
+                    endField();
+                    return true;
+                }
+                byte b = bytes[pos++];
+                switch (state)
+                {
+                    case FIELD_START:
+                    case UNQUOTED:
+                        if (b == delimiter)
+                        {
+                            endField();
+                            state = FIELD_START;
+                        }
+                        else if (b == LF || b == CR)
+                        {
+                            if (state == FIELD_START && width == 0)
+                            {
+                                //空行，或者CRLF中的LF
+                                continue;
+                            }
+                            endField();
+                            return true;
+                        }
+                        else if (b == quote && state == FIELD_START)
+                        {
+                            quotedField = true;
+                            state = QUOTED;
+                        }
+                        else
+                        {
+                            //普通字符成段复制
+                            int from = pos - 1;
+                            byte c;
+                            while (pos < limit && (c = bytes[pos]) != delimiter && c != LF && c != CR)
+                            {
+                                pos++;
+                            }
+                            append(from, pos - from);
+                            state = UNQUOTED;
+                        }
+                        break;
+                    case QUOTED:
+                        if (b == quote)
+                        {
+                            state = QUOTE_IN_QUOTED;
+                        }
+                        else
+                        {
+                            int from = pos - 1;
+                            while (pos < limit && bytes[pos] != quote)
+                            {
+                                pos++;
+                            }
+                            append(from, pos - from);
+                        }
+                        break;
+                    default:
+                        if (b == quote)
+                        {
+                            //转义的引号
+                            append(pos - 1, 1);
+                            state = QUOTED;
+                        }
+                        else if (b == delimiter)
+                        {
+                            endField();
+                            state = FIELD_START;
+                        }
+                        else if (b == LF || b == CR)
+                        {
+                            endField();
+                            return true;
+                        }
+                        else
+                        {
+                            //引号后面还有字符，不符合RFC 4180，按原样保留
+                            append(pos - 1, 1);
+                            state = UNQUOTED;
+                        }
+                }
+            }
+        }
+
+        private boolean fill() throws IOException
+        {
+            if (position >= end)
+            {
+                return false;
+            }
+            buffer.clear();
+            if (end - position < BUFFER_SIZE)
+            {
+                buffer.limit((int) (end - position));
+            }
+            int n = channel.read(buffer, position);
+            if (n <= 0)
+            {
+                return false;
+            }
+            position += n;
+            pos = 0;
+            limit = n;
+            return true;
+        }
+
+        private void append(int from, int length)
+        {
+            if (fieldLength + length > field.length)
+            {
+                field = Arrays.copyOf(field, Math.max(fieldLength + length, field.length << 1));
+            }
+            System.arraycopy(bytes, from, field, fieldLength, length);
+            fieldLength += length;
+        }
+
+        private void endField()
+        {
+            if (width == cells.length)
+            {
+                cells = Arrays.copyOf(cells, width << 1);
+            }
+            if (fieldLength > 0)
+            {
+                cells[width++] = new String(field, 0, fieldLength, charset);
+            }
+            else
+            {
+                //没有引号的空字段为null，""为空字符串
+                cells[width++] = quotedField ? "" : null;
+            }
+            fieldLength = 0;
+            quotedField = false;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package jar.shaw.tools.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.stream.Collectors.toList;
+import static jar.shaw.tools.util.ExceptionHelper.runtime;
+
+/**
+ * <p>并行读取多个Excel文件的多个sheet，每个sheet的映射规则和{@link ExcelEventReader}相同，第一行为标题行，
+ * offset和limit对每个sheet单独计算</p>
+ * <p>文件在固定大小的线程池中并行读取：xlsx的共享字符串只加载一次，选中的各个sheet作为独立的任务并行解析；
+ * xls的所有sheet在同一个记录流中，一个文件一个任务，一遍解析出所有选中的sheet。
+ * 同时打开的工作簿不超过{@link #maxOpenWorkbooks(int)}，超过时等待前面的文件读完，以此限制内存占用。
+ * 结果先按传入的文件顺序，再按sheet在工作簿中的顺序排列，和线程的完成顺序无关</p>
+ * 例如：
+ * <pre>
+ *     List&lt;SheetResult&lt;Order&gt;&gt; results = new ExcelBatchReader&lt;&gt;(Order.class)
+ *         .sheets((index, name) -&gt; name.startsWith("订单")).parallelism(4).read(paths);
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/29</p>
+ */
+public class ExcelBatchReader<T>
+{
+    private static Logger log = LoggerFactory.getLogger(ExcelBatchReader.class);
+
+    private final ExcelEventReader<T> reader;
+    private BiPredicate<Integer, String> sheets = (index, name) -> index == 0;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int maxOpenWorkbooks = parallelism;
+
+    /**
+     * @param clazz 对象类型，需要有无参构造器
+     */
+    public ExcelBatchReader(Class<T> clazz)
+    {
+        this.reader = new ExcelEventReader<>(clazz);
+    }
+
+    /**
+     * @param sheets sheet的选择条件，参数为从0开始的下标和sheet名称，默认只读第一个sheet
+     * @return this
+     */
+    public ExcelBatchReader<T> sheets(BiPredicate<Integer, String> sheets)
+    {
+        this.sheets = sheets;
+        return this;
+    }
+
+    /**
+     * @param offset 每个sheet跳过的数据行数，不包括标题行，默认为0
+     * @return this
+     */
+    public ExcelBatchReader<T> offset(long offset)
+    {
+        reader.offset(offset);
+        return this;
+    }
+
+    /**
+     * @param limit 每个sheet最多读取的数据行数，默认不限制
+     * @return this
+     */
+    public ExcelBatchReader<T> limit(long limit)
+    {
+        reader.limit(limit);
+        return this;
+    }
+
+    /**
+     * @param cacheSize xlsx的共享字符串放在内存映射文件中，堆上缓存的字符串个数，见{@link ExcelEventReader#mappedSharedStrings(int)}
+     * @return this
+     */
+    public ExcelBatchReader<T> mappedSharedStrings(int cacheSize)
+    {
+        reader.mappedSharedStrings(cacheSize);
+        return this;
+    }
+
+    /**
+     * @param parallelism 解析线程数，默认为CPU核数
+     * @return this
+     */
+    public ExcelBatchReader<T> parallelism(int parallelism)
+    {
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @param maxOpenWorkbooks 同时打开的工作簿个数上限，默认为CPU核数。{@link #stream(Collection)}中已读完但还没有消费的文件也计算在内
+     * @return this
+     */
+    public ExcelBatchReader<T> maxOpenWorkbooks(int maxOpenWorkbooks)
+    {
+        if (maxOpenWorkbooks <= 0)
+        {
+            throw new IllegalArgumentException("maxOpenWorkbooks must be positive: " + maxOpenWorkbooks);
+        }
+        this.maxOpenWorkbooks = maxOpenWorkbooks;
+        return this;
+    }
+
+    /**
+     * 并行读取所有文件中选中的sheet，方法在所有文件读完后返回。某个文件失败时不再打开后续的文件，
+     * 等已经开始的文件结束后抛出第一个失败的异常
+     * @param paths excel文件，只支持xls和xlsx
+     * @return 每个选中的sheet的结果，先按文件顺序，再按sheet顺序排列
+     */
+    public List<SheetResult<T>> read(Collection<Path> paths)
+    {
+        ExecutorService executor = newExecutor();
+        Semaphore openWorkbooks = new Semaphore(maxOpenWorkbooks);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<List<SheetResult<T>>>> files = new ArrayList<>(paths.size());
+        try
+        {
+            for (Path path : paths)
+            {
+                openWorkbooks.acquire();
+                if (failed.get())
+                {
+                    openWorkbooks.release();
+                    break;
+                }
+                CompletableFuture<List<SheetResult<T>>> file = readFile(path, executor, failed);
+                file.whenComplete((results, e) -> {
+                    if (e != null)
+                    {
+                        failed.set(true);
+                    }
+                    openWorkbooks.release();
+                });
+                files.add(file);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            failed.set(true);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("excel batch read interrupted", e);
+        }
+        List<SheetResult<T>> results = new ArrayList<>();
+        Throwable error = null;
+        for (CompletableFuture<List<SheetResult<T>>> file : files)
+        {
+            try
+            {
+                results.addAll(join(file));
+            }
+            catch (Throwable e)
+            {
+                if (error == null)
+                {
+                    error = e;
+                }
+            }
+        }
+        executor.shutdown();
+        if (error != null)
+        {
+            throw rethrow(error);
+        }
+        return results;
+    }
+
+    /**
+     * 并行读取所有文件中选中的sheet，合并为一个流，顺序和{@link #read(Collection)}的结果相同。
+     * 文件按顺序提前读取，已读完和正在读的文件不超过{@link #maxOpenWorkbooks(int)}个，一个文件的对象消费完后才开始读取下一个文件，
+     * 所以内存中最多保留这么多个文件的对象。流需要关闭以停止后台的解析，建议用try-with-resource
+     * @param paths excel文件，只支持xls和xlsx
+     * @return 延迟读取的对象流
+     */
+    public Stream<T> stream(Collection<Path> paths)
+    {
+        MergedRows rows = new MergedRows(paths);
+        return StreamSupport.stream(rows, false).onClose(rows::close);
+    }
+
+    /**
+     * 在线程池中读取一个文件，xlsx打开后每个选中的sheet再提交一个任务，所有sheet结束后关闭工作簿
+     */
+    private CompletableFuture<List<SheetResult<T>>> readFile(Path path, ExecutorService executor,
+        AtomicBoolean cancelled)
+    {
+        if (ExcelEventReader.isXls(path))
+        {
+            return CompletableFuture.supplyAsync(() -> readXls(path, cancelled), executor);
+        }
+        return CompletableFuture.supplyAsync(() -> runtime(() -> reader.openXlsx(path)), executor)
+            .thenCompose(workbook -> {
+                List<CompletableFuture<SheetResult<T>>> tasks = new ArrayList<>();
+                for (ExcelEventReader.XlsxSheet sheet : workbook.sheets())
+                {
+                    if (sheets.test(sheet.index, sheet.name))
+                    {
+                        tasks.add(CompletableFuture.supplyAsync(() -> readSheet(path, workbook, sheet, cancelled),
+                            executor));
+                    }
+                }
+                return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((v, e) -> workbook.close())
+                    .thenApply(v -> {
+                        log.info("success load " + tasks.size() + " sheets from excel: " + path);
+                        return tasks.stream().map(CompletableFuture::join).collect(toList());
+                    });
+            });
+    }
+
+    private SheetResult<T> readSheet(Path path, ExcelEventReader.XlsxWorkbook workbook, ExcelEventReader.XlsxSheet sheet,
+        AtomicBoolean cancelled)
+    {
+        List<T> rows = new ArrayList<>();
+        if (!cancelled.get())
+        {
+            runtime(() -> workbook.read(sheet, reader.entityRows(collector(rows, cancelled))));
+        }
+        return new SheetResult<>(path, sheet.index, sheet.name, rows);
+    }
+
+    private List<SheetResult<T>> readXls(Path path, AtomicBoolean cancelled)
+    {
+        List<SheetResult<T>> results = new ArrayList<>();
+        if (cancelled.get())
+        {
+            return results;
+        }
+        runtime(() -> {
+            try
+            {
+                //sheet的个数在解析到之前未知，只能解析到最后
+                ExcelEventReader.readXls(path, (index, name) -> {
+                    if (!sheets.test(index, name))
+                    {
+                        return null;
+                    }
+                    List<T> rows = new ArrayList<>();
+                    results.add(new SheetResult<>(path, index, name, rows));
+                    return reader.entityRows(collector(rows, cancelled));
+                }, Integer.MAX_VALUE);
+            }
+            catch (ExcelEventReader.StopReading e)
+            {
+                //已取消
+            }
+        });
+        log.info("success load " + results.size() + " sheets from excel: " + path);
+        return results;
+    }
+
+    /**
+     * @return 把对象收集到rows中，取消后停止解析
+     */
+    private Consumer<T> collector(List<T> rows, AtomicBoolean cancelled)
+    {
+        return object -> {
+            if (cancelled.get())
+            {
+                throw new ExcelEventReader.StopReading();
+            }
+            rows.add(object);
+        };
+    }
+
+    private ExecutorService newExecutor()
+    {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "excel-batch-reader-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 等待结果，任务中的异常去掉CompletionException的包装后抛出
+     */
+    private static <R> R join(CompletableFuture<R> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            throw rethrow(e.getCause() == null ? e : e.getCause());
+        }
+    }
+
+    /**
+     * 原样抛出任务中的异常，受检异常不包装
+     */
+    private static RuntimeException rethrow(Throwable e)
+    {
+        if (e instanceof Error)
+        {
+            throw (Error) e;
+        }
+        if (e instanceof Exception)
+        {
+            runtime((Exception) e);
+        }
+        return new IllegalStateException(e);
+    }
+
+    /**
+     * 一个sheet的读取结果
+     */
+    public static final class SheetResult<T>
+    {
+        private final Path path;
+        private final int sheetIndex;
+        private final String sheetName;
+        private final List<T> rows;
+
+        SheetResult(Path path, int sheetIndex, String sheetName, List<T> rows)
+        {
+            this.path = path;
+            this.sheetIndex = sheetIndex;
+            this.sheetName = sheetName;
+            this.rows = rows;
+        }
+
+        /**
+         * @return sheet所在的文件
+         */
+        public Path getPath()
+        {
+            return path;
+        }
+
+        /**
+         * @return sheet在工作簿中的下标，从0开始
+         */
+        public int getSheetIndex()
+        {
+            return sheetIndex;
+        }
+
+        /**
+         * @return sheet名称
+         */
+        public String getSheetName()
+        {
+            return sheetName;
+        }
+
+        /**
+         * @return 按行的顺序排列的对象
+         */
+        public List<T> getRows()
+        {
+            return rows;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "SheetResult{path=" + path + ", sheetIndex=" + sheetIndex + ", sheetName=" + sheetName + ", rows="
+                + rows.size() + "}";
+        }
+    }
+
+    /**
+     * 按文件顺序合并的对象，最多maxOpenWorkbooks个文件在读取或等待消费，一个文件消费完后提交下一个文件
+     */
+    private final class MergedRows extends Spliterators.AbstractSpliterator<T>
+    {
+        private final Iterator<Path> paths;
+        private final ExecutorService executor = newExecutor();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final Deque<CompletableFuture<List<SheetResult<T>>>> pending = new ArrayDeque<>();
+        private Iterator<T> current = Collections.emptyIterator();
+        private boolean consuming;
+
+        MergedRows(Collection<Path> paths)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.paths = new ArrayList<>(paths).iterator();
+            while (pending.size() < maxOpenWorkbooks && submitNext())
+            {
+                //提前读取前几个文件
+            }
+        }
+
+        private boolean submitNext()
+        {
+            if (!paths.hasNext())
+            {
+                return false;
+            }
+            pending.add(readFile(paths.next(), executor, cancelled));
+            return true;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action)
+        {
+            while (!current.hasNext())
+            {
+                if (consuming)
+                {
+                    //上一个文件已消费完
+                    submitNext();
+                }
+                CompletableFuture<List<SheetResult<T>>> file = pending.poll();
+                if (file == null)
+                {
+                    executor.shutdown();
+                    return false;
+                }
+                consuming = true;
+                current = join(file).stream().flatMap(sheet -> sheet.getRows().stream()).iterator();
+            }
+            action.accept(current.next());
+            return true;
+        }
+
+        void close()
+        {
+            cancelled.set(true);
+            current = Collections.emptyIterator();
+            //等已提交的任务退出后关闭线程池，xlsx的工作簿在所有sheet任务结束时关闭
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((v, e) -> executor.shutdown());
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,877 @@
+package jar.shaw.tools.io;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static jar.shaw.tools.util.ExceptionHelper.runtime;
+
+/**
+ * <p>基于POI事件API的Excel读取器，逐行解析第一个sheet并映射为对象，不构建整个工作簿的对象模型，
+ * 内存占用和行数基本无关，适合几十万行以上的文件</p>
+ * <p>xlsx通过{@link XSSFReader}和{@link XSSFSheetXMLHandler}解析sheet的SAX事件，
+ * xls通过{@link HSSFEventFactory}解析记录事件。映射规则和{@link ExcelHelper#readObject(Class, Path)}一致：
+ * 第一行为标题行，字段用{@link ExcelHelper.ExcelTitle}指定列名，支持的字段类型也相同。事件API给出的是单元格文本，
+ * 数字按Excel的显示规则转为文本但不应用单元格格式，布尔值为TRUE或FALSE，错误值为ERROR:加错误文本，公式取缓存的结果，
+ * 再由字段的转换器把文本转为字段类型，日期单元格的文本是Excel的日期序号，只有数字单元格的文本才按日期序号转为日期。没有任何单元格的空行会被跳过</p>
+ * <p>可以用{@link #offset(long)}和{@link #limit(long)}只读取一部分数据行，读够limit行后立即停止解析并释放文件；
+ * {@link #stream(Path)}在后台线程解析，通过有界队列把对象交给流的消费者，流关闭时解析线程随之停止</p>
+ * <p>读取多个sheet或多个文件见{@link ExcelBatchReader}</p>
+ * 例如：
+ * <pre>
+ *     new ExcelEventReader&lt;&gt;(Order.class).read(path, order -&gt; ...);
+ *     try (Stream&lt;Order&gt; orders = new ExcelEventReader&lt;&gt;(Order.class).offset(100).limit(10).stream(path))
+ *     {
+ *         ...
+ *     }
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/27</p>
+ */
+public class ExcelEventReader<T>
+{
+    private static Logger log = LoggerFactory.getLogger(ExcelEventReader.class);
+
+    /**
+     * 数字不应用单元格格式，和{@link Cell#setCellType(int)}转为字符串的结果一致
+     */
+    private static final DataFormatter RAW_FORMATTER = new DataFormatter()
+    {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString)
+        {
+            return NumberToTextConverter.toText(value);
+        }
+    };
+
+    /**
+     * {@link #stream(Path)}的队列长度，解析领先消费最多这么多行
+     */
+    private static final int STREAM_QUEUE_CAPACITY = 1024;
+
+    private final Class<T> clazz;
+    private long offset;
+    private long limit = Long.MAX_VALUE;
+    /**
+     * 小于0时共享字符串放在堆上，否则用{@link MappedSharedStringsTable}，值为其缓存大小
+     */
+    private int stringCacheSize = -1;
+
+    /**
+     * @param clazz 对象类型，需要有无参构造器
+     */
+    public ExcelEventReader(Class<T> clazz)
+    {
+        this.clazz = clazz;
+    }
+
+    /**
+     * @param offset 跳过的数据行数，不包括标题行，默认为0，跳过的行不会映射为对象
+     * @return this
+     */
+    public ExcelEventReader<T> offset(long offset)
+    {
+        if (offset < 0)
+        {
+            throw new IllegalArgumentException("offset must not be negative: " + offset);
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * @param limit 最多读取的数据行数，默认不限制
+     * @return this
+     */
+    public ExcelEventReader<T> limit(long limit)
+    {
+        if (limit < 0)
+        {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * xlsx的共享字符串改为放在内存映射的临时文件中，堆上只缓存最近用到的字符串，用于共享字符串表很大的文件，
+     * 见{@link MappedSharedStringsTable}。默认整个共享字符串表放在堆上，对xls不起作用
+     * @param cacheSize 缓存的已解码字符串个数
+     * @return this
+     */
+    public ExcelEventReader<T> mappedSharedStrings(int cacheSize)
+    {
+        if (cacheSize < 0)
+        {
+            throw new IllegalArgumentException("cacheSize must not be negative: " + cacheSize);
+        }
+        this.stringCacheSize = cacheSize;
+        return this;
+    }
+
+    /**
+     * 逐行读取第一个sheet，每解析完一行就映射为对象交给consumer，consumer返回后该行的数据即可被回收
+     * @param path excel文件对应的Path，只支持xls和xlsx
+     * @param consumer 对象的消费者
+     */
+    public void read(Path path, Consumer<? super T> consumer)
+    {
+        runtime(() -> {
+            readRows(path, new EntityRows(consumer));
+            log.info("success load excel from: " + path);
+        });
+    }
+
+    /**
+     * 在后台线程逐行读取第一个sheet，返回的流在解析出对象后即可消费，不需要等整个文件解析完。
+     * 流需要关闭，关闭后解析线程停止并释放文件，建议用try-with-resource，解析失败的异常在消费时抛出
+     * @param path excel文件对应的Path，只支持xls和xlsx
+     * @return 延迟读取的对象流
+     */
+    public Stream<T> stream(Path path)
+    {
+        RowQueue<T> queue = new RowQueue<>();
+        Thread parser = new Thread(() -> {
+            try
+            {
+                readRows(path, new EntityRows(queue::put));
+                log.info("success load excel from: " + path);
+                queue.finish(null);
+            }
+            catch (Throwable e)
+            {
+                queue.finish(e);
+            }
+        }, "excel-stream-reader");
+        parser.setDaemon(true);
+        queue.parser = parser;
+        parser.start();
+        return StreamSupport.stream(queue, false).onClose(queue::close);
+    }
+
+    /**
+     * 逐行读取第一个sheet的单元格文本
+     * @param path excel文件对应的Path，只支持xls和xlsx
+     * @param listener 行的监听器，返回false时停止读取
+     * @throws Exception 读取或解析失败
+     */
+    void readRows(Path path, RowListener listener) throws Exception
+    {
+        try
+        {
+            if (isXls(path))
+            {
+                readXls(path, (index, name) -> index == 0 ? listener : null, 0);
+            }
+            else
+            {
+                try (XlsxWorkbook workbook = openXlsx(path))
+                {
+                    if (workbook.sheets().isEmpty())
+                    {
+                        throw new RuntimeException("no sheet found in " + path);
+                    }
+                    workbook.read(workbook.sheets().get(0), listener);
+                }
+            }
+        }
+        catch (StopReading e)
+        {
+            //listener要求停止
+        }
+    }
+
+    /**
+     * 按设置的共享字符串存储方式打开xlsx
+     */
+    XlsxWorkbook openXlsx(Path path) throws Exception
+    {
+        return new XlsxWorkbook(path, stringCacheSize);
+    }
+
+    /**
+     * @param path excel文件对应的Path
+     * @return 是否为xls，既不是xls也不是xlsx时抛出异常
+     */
+    static boolean isXls(Path path)
+    {
+        String fileName = path.getFileName().toString();
+        if (fileName.endsWith(".xls"))
+        {
+            return true;
+        }
+        if (fileName.endsWith(".xlsx"))
+        {
+            return false;
+        }
+        throw new RuntimeException("only xls or xlsx supported");
+    }
+
+    /**
+     * 一遍读取xls中的多个sheet，xls的所有sheet在同一个流中，只能顺序读取
+     * @param path xls文件
+     * @param sheets 为每个sheet提供行的监听器，返回null时跳过该sheet，监听器返回false时跳过该sheet剩余的行
+     * @param lastSheet 读完这个下标的sheet后停止，之后的sheet不再解析
+     * @throws Exception 读取或解析失败
+     */
+    static void readXls(Path path, SheetListener sheets, int lastSheet) throws Exception
+    {
+        try (NPOIFSFileSystem fs = new NPOIFSFileSystem(path.toFile(), true))
+        {
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(new XlsRows(sheets, lastSheet));
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs.getRoot());
+        }
+    }
+
+    /**
+     * 打开的xlsx文件，共享字符串和样式只加载一次，各个sheet可以在不同线程中同时读取
+     */
+    static final class XlsxWorkbook implements Closeable
+    {
+        private final OPCPackage pkg;
+        private final ReadOnlySharedStringsTable strings;
+        private final StylesTable styles;
+        private final List<XlsxSheet> sheets = new ArrayList<>();
+
+        /**
+         * @param stringCacheSize 小于0时共享字符串放在堆上，否则放在内存映射文件中，值为缓存的字符串个数
+         */
+        XlsxWorkbook(Path path, int stringCacheSize) throws Exception
+        {
+            if (!Files.exists(path))
+            {
+                //OPCPackage对不存在的文件只会报Zip File is closed
+                throw new NoSuchFileException(path.toString());
+            }
+            pkg = OPCPackage.open(path.toFile(), PackageAccess.READ);
+            try
+            {
+                XSSFReader reader = new XSSFReader(pkg);
+                strings = stringCacheSize < 0 ? new ReadOnlySharedStringsTable(pkg)
+                    : new MappedSharedStringsTable(pkg, stringCacheSize);
+                styles = reader.getStylesTable();
+                XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+                while (iterator.hasNext())
+                {
+                    iterator.next().close();
+                    sheets.add(new XlsxSheet(sheets.size(), iterator.getSheetName(), iterator.getSheetPart()));
+                }
+            }
+            catch (Exception | Error e)
+            {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return 按工作簿中的顺序排列的sheet
+         */
+        List<XlsxSheet> sheets()
+        {
+            return sheets;
+        }
+
+        /**
+         * 读取一个sheet，监听器返回false时停止该sheet
+         */
+        void read(XlsxSheet sheet, RowListener listener) throws Exception
+        {
+            try (InputStream in = sheet.part.getInputStream())
+            {
+                XMLReader parser = SAXHelper.newXMLReader();
+                parser.setContentHandler(new XlsxSheetHandler(styles, strings, new XlsxRows(listener)));
+                parser.parse(new InputSource(in));
+            }
+            catch (StopReading e)
+            {
+                //listener要求停止
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            if (strings instanceof MappedSharedStringsTable)
+            {
+                ((MappedSharedStringsTable) strings).close();
+            }
+            //只读打开的包用revert关闭，close会尝试保存
+            pkg.revert();
+        }
+    }
+
+    /**
+     * xlsx中的一个sheet
+     */
+    static final class XlsxSheet
+    {
+        final int index;
+        final String name;
+        private final PackagePart part;
+
+        XlsxSheet(int index, String name, PackagePart part)
+        {
+            this.index = index;
+            this.name = name;
+            this.part = part;
+        }
+    }
+
+    /**
+     * 为每个sheet提供行的监听器
+     */
+    @FunctionalInterface
+    interface SheetListener
+    {
+        /**
+         * @param index sheet的下标，从0开始
+         * @param name sheet名称
+         * @return 该sheet的行监听器，返回null时跳过该sheet
+         */
+        RowListener sheet(int index, String name);
+    }
+
+    /**
+     * 为每个sheet创建一个映射为对象的行监听器，每个sheet的第一行都是标题行，offset和limit对每个sheet单独计算
+     * @param consumer 对象的消费者
+     * @return 行的监听器
+     */
+    RowListener entityRows(Consumer<? super T> consumer)
+    {
+        return new EntityRows(consumer);
+    }
+
+    /**
+     * 行的监听器
+     */
+    @FunctionalInterface
+    interface RowListener
+    {
+        /**
+         * @param rowNum 行号，从0开始
+         * @param cells 按列号存放的单元格文本，没有的单元格为null。数组会被复用，长度可能大于该行的列数，
+         * 超出的部分都是null，需要保留时要复制
+         * @param numeric 和cells对应，单元格是数字（包括结果为数字的公式）时为true，同样会被复用
+         * @return 是否继续读取
+         */
+        boolean onRow(int rowNum, String[] cells, boolean[] numeric);
+    }
+
+    /**
+     * 停止解析，用于跳出SAX解析和流关闭后的解析线程，不需要堆栈
+     */
+    static final class StopReading extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        StopReading()
+        {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * 按列号收集一行的单元格，行结束时交给{@link RowListener}
+     */
+    private static class RowBuffer
+    {
+        private final RowListener listener;
+        private String[] cells = new String[16];
+        private boolean[] numeric = new boolean[16];
+        private int width;
+
+        RowBuffer(RowListener listener)
+        {
+            this.listener = listener;
+        }
+
+        void cell(int column, String value, boolean isNumeric)
+        {
+            if (column >= cells.length)
+            {
+                cells = Arrays.copyOf(cells, Math.max(column + 1, cells.length << 1));
+                numeric = Arrays.copyOf(numeric, cells.length);
+            }
+            cells[column] = value;
+            numeric[column] = isNumeric;
+            width = Math.max(width, column + 1);
+        }
+
+        int width()
+        {
+            return width;
+        }
+
+        /**
+         * @return 是否继续读取
+         */
+        boolean flush(int rowNum)
+        {
+            if (width == 0)
+            {
+                return true;
+            }
+            boolean next = listener.onRow(rowNum, cells, numeric);
+            Arrays.fill(cells, 0, width, null);
+            Arrays.fill(numeric, 0, width, false);
+            width = 0;
+            return next;
+        }
+    }
+
+    /**
+     * xlsx的行事件
+     */
+    private static final class XlsxRows extends RowBuffer implements XSSFSheetXMLHandler.SheetContentsHandler
+    {
+        /**
+         * 当前单元格是否为数字，由{@link XlsxSheetHandler}在单元格开始时设置
+         */
+        private boolean numericCell;
+
+        XlsxRows(RowListener listener)
+        {
+            super(listener);
+        }
+
+        @Override
+        public void startRow(int rowNum)
+        {
+        }
+
+        @Override
+        public void endRow(int rowNum)
+        {
+            if (!flush(rowNum))
+            {
+                throw new StopReading();
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment)
+        {
+            //没有r属性的单元格紧跟在上一个单元格后面
+            cell(cellReference == null ? width() : columnIndex(cellReference), formattedValue, numericCell);
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName)
+        {
+        }
+
+        /**
+         * 从A1形式的引用中解析列号，从0开始
+         */
+        private static int columnIndex(String cellReference)
+        {
+            int column = 0;
+            for (int i = 0; i < cellReference.length(); i++)
+            {
+                char c = cellReference.charAt(i);
+                if (c < 'A' || c > 'Z')
+                {
+                    break;
+                }
+                column = column * 26 + (c - 'A' + 1);
+            }
+            return column - 1;
+        }
+    }
+
+    /**
+     * 在单元格开始时从t属性记下单元格类型，{@link XSSFSheetXMLHandler.SheetContentsHandler}的回调中只有文本
+     */
+    private static final class XlsxSheetHandler extends XSSFSheetXMLHandler
+    {
+        private final XlsxRows rows;
+
+        XlsxSheetHandler(StylesTable styles, ReadOnlySharedStringsTable strings, XlsxRows rows)
+        {
+            super(styles, strings, rows, RAW_FORMATTER, false);
+            this.rows = rows;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+        {
+            if ("c".equals(localName))
+            {
+                //没有t属性或为n时是数字，结果为数字的公式也没有t属性
+                String type = attributes.getValue("t");
+                rows.numericCell = type == null || "n".equals(type);
+            }
+            super.startElement(uri, localName, qName, attributes);
+        }
+    }
+
+    /**
+     * xls的记录事件，单元格记录按sheet和行排列，行号变化时上一行结束，sheet的EOF记录时最后一行结束
+     */
+    private static final class XlsRows extends AbortableHSSFListener
+    {
+        private static final short CONTINUE = 0;
+        private static final short STOP = 1;
+
+        private final SheetListener sheets;
+        private final int lastSheet;
+        private final List<BoundSheetRecord> boundSheets = new ArrayList<>();
+        private BoundSheetRecord[] sheetOrder;
+        /**
+         * 当前sheet的行缓冲，跳过的sheet为null
+         */
+        private RowBuffer row;
+        private SSTRecord sst;
+        private int sheetIndex = -1;
+        private int rowNum = -1;
+        /**
+         * 结果为字符串的公式，值在紧跟的StringRecord中
+         */
+        private FormulaRecord pendingFormula;
+
+        XlsRows(SheetListener sheets, int lastSheet)
+        {
+            this.sheets = sheets;
+            this.lastSheet = lastSheet;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record)
+        {
+            switch (record.getSid())
+            {
+                case BoundSheetRecord.sid:
+                    boundSheets.add((BoundSheetRecord) record);
+                    return CONTINUE;
+                case BOFRecord.sid:
+                    if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET)
+                    {
+                        startSheet();
+                    }
+                    return CONTINUE;
+                case SSTRecord.sid:
+                    sst = (SSTRecord) record;
+                    return CONTINUE;
+                case EOFRecord.sid:
+                    if (sheetIndex < 0)
+                    {
+                        //工作簿全局部分结束
+                        return CONTINUE;
+                    }
+                    if (row != null)
+                    {
+                        row.flush(rowNum);
+                        row = null;
+                    }
+                    return sheetIndex >= lastSheet ? STOP : CONTINUE;
+                default:
+                    return row != null ? cellRecord(record) : CONTINUE;
+            }
+        }
+
+        private void startSheet()
+        {
+            if (sheetOrder == null)
+            {
+                //sheet的BOF按流中的位置出现
+                sheetOrder = BoundSheetRecord.orderByBofPosition(boundSheets);
+            }
+            sheetIndex++;
+            rowNum = -1;
+            pendingFormula = null;
+            String name = sheetIndex < sheetOrder.length ? sheetOrder[sheetIndex].getSheetname() : null;
+            RowListener listener = sheets.sheet(sheetIndex, name);
+            row = listener == null ? null : new RowBuffer(listener);
+        }
+
+        private short cellRecord(Record record)
+        {
+            switch (record.getSid())
+            {
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord label = (LabelSSTRecord) record;
+                    return cell(label.getRow(), label.getColumn(), sst.getString(label.getSSTIndex()).getString(), false);
+                case LabelRecord.sid:
+                    LabelRecord oldLabel = (LabelRecord) record;
+                    return cell(oldLabel.getRow(), oldLabel.getColumn(), oldLabel.getValue(), false);
+                case NumberRecord.sid:
+                    NumberRecord number = (NumberRecord) record;
+                    return cell(number.getRow(), number.getColumn(), NumberToTextConverter.toText(number.getValue()), true);
+                case BoolErrRecord.sid:
+                    BoolErrRecord boolErr = (BoolErrRecord) record;
+                    return cell(boolErr.getRow(), boolErr.getColumn(), boolErr.isBoolean()
+                        ? booleanText(boolErr.getBooleanValue()) : errorText(boolErr.getErrorValue()), false);
+                case FormulaRecord.sid:
+                    FormulaRecord formula = (FormulaRecord) record;
+                    if (formula.hasCachedResultString())
+                    {
+                        pendingFormula = formula;
+                        return CONTINUE;
+                    }
+                    return cell(formula.getRow(), formula.getColumn(), formulaText(formula),
+                        formula.getCachedResultType() == Cell.CELL_TYPE_NUMERIC);
+                case StringRecord.sid:
+                    if (pendingFormula != null)
+                    {
+                        FormulaRecord pending = pendingFormula;
+                        pendingFormula = null;
+                        return cell(pending.getRow(), pending.getColumn(), ((StringRecord) record).getString(), false);
+                    }
+                    return CONTINUE;
+                default:
+                    return CONTINUE;
+            }
+        }
+
+        private short cell(int cellRow, int column, String value, boolean numeric)
+        {
+            if (cellRow != rowNum)
+            {
+                if (!row.flush(rowNum))
+                {
+                    //跳过该sheet剩余的行
+                    row = null;
+                    return sheetIndex >= lastSheet ? STOP : CONTINUE;
+                }
+                rowNum = cellRow;
+            }
+            row.cell(column, value, numeric);
+            return CONTINUE;
+        }
+
+        private static String formulaText(FormulaRecord formula)
+        {
+            switch (formula.getCachedResultType())
+            {
+                case Cell.CELL_TYPE_BOOLEAN:
+                    return booleanText(formula.getCachedBooleanValue());
+                case Cell.CELL_TYPE_ERROR:
+                    return errorText(formula.getCachedErrorValue());
+                default:
+                    return NumberToTextConverter.toText(formula.getValue());
+            }
+        }
+
+        private static String booleanText(boolean value)
+        {
+            return value ? "TRUE" : "FALSE";
+        }
+
+        /**
+         * 和{@link XSSFSheetXMLHandler}对错误单元格的文本一致
+         */
+        private static String errorText(int code)
+        {
+            return "ERROR:" + FormulaError.forInt(code).getString();
+        }
+    }
+
+    /**
+     * 解析线程和流的消费者之间的有界队列，队列满时解析线程等待，流关闭后解析线程在下一行停止
+     */
+    private static final class RowQueue<T> extends Spliterators.AbstractSpliterator<T>
+    {
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(STREAM_QUEUE_CAPACITY);
+        private volatile boolean closed;
+        private volatile Throwable failure;
+        private Thread parser;
+        private boolean done;
+
+        RowQueue()
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        }
+
+        /**
+         * 解析线程放入一个对象，流已关闭时抛出{@link StopReading}停止解析
+         */
+        void put(Object item)
+        {
+            if (closed)
+            {
+                throw new StopReading();
+            }
+            try
+            {
+                //限时等待，消费者不再读取就关闭流时解析线程也能及时发现
+                while (!queue.offer(item, 100, TimeUnit.MILLISECONDS))
+                {
+                    if (closed)
+                    {
+                        throw new StopReading();
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new StopReading();
+            }
+        }
+
+        void finish(Throwable e)
+        {
+            failure = e;
+            try
+            {
+                put(END);
+            }
+            catch (StopReading ignored)
+            {
+                //流已关闭，没有消费者了
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super T> action)
+        {
+            if (done)
+            {
+                return false;
+            }
+            Object item = runtime(queue::take);
+            if (item == END)
+            {
+                done = true;
+                Throwable e = failure;
+                if (e instanceof Error)
+                {
+                    throw (Error) e;
+                }
+                if (e != null)
+                {
+                    runtime((Exception) e);
+                }
+                return false;
+            }
+            action.accept((T) item);
+            return true;
+        }
+
+        /**
+         * 停止解析线程并等待它释放文件
+         */
+        void close()
+        {
+            closed = true;
+            queue.clear();
+            runtime(() -> parser.join());
+        }
+    }
+
+    /**
+     * 将第一行作为标题行得到字段的列号，之后的行映射为对象
+     */
+    private final class EntityRows implements RowListener
+    {
+        private final Consumer<? super T> consumer;
+        private final long offset = ExcelEventReader.this.offset;
+        private final long limit = ExcelEventReader.this.limit;
+        private ExcelHelper.ColumnMapping[] columns;
+        private long rows;
+
+        EntityRows(Consumer<? super T> consumer)
+        {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public boolean onRow(int rowNum, String[] cells, boolean[] numeric)
+        {
+            if (columns == null)
+            {
+                if (rowNum != 0)
+                {
+                    throw new RuntimeException("title row not found, the first row is " + rowNum);
+                }
+                title(cells);
+                return limit > 0;
+            }
+            if (rows++ < offset)
+            {
+                return true;
+            }
+            T object = runtime(clazz::newInstance);
+            for (ExcelHelper.ColumnMapping column : columns)
+            {
+                if (column.index < cells.length && cells[column.index] != null)
+                {
+                    String text = cells[column.index];
+                    column.set(object, numeric[column.index] ? column.converter.fromNumericText(text)
+                        : column.converter.fromText(text));
+                }
+            }
+            consumer.accept(object);
+            return rows - offset < limit;
+        }
+
+        private void title(String[] cells)
+        {
+            Map<String, Integer> titleNameToIndex = new HashMap<>();
+            for (int i = 0; i < cells.length; i++)
+            {
+                if (cells[i] != null)
+                {
+                    titleNameToIndex.put(cells[i], i);
+                }
+            }
+            columns = ExcelHelper.getFieldIndex(clazz, titleNameToIndex).toArray(new ExcelHelper.ColumnMapping[0]);
+        }
+    }
+}
@@ -11,6 +11,8 @@ import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static jar.shaw.tools.util.ExceptionHelper.runtime;
 
@@ -28,7 +30,9 @@ public class ExcelHelper
 
     /**
      * 读取Excel为对象数组，一行对应一个对象。<p />
-     * 对象中的字段用{@link ExcelTitle}定义好要读取的列，例如@ExcelTitle(“列名”)，字段都读取为String类型
+     * 对象中的字段用{@link ExcelTitle}定义好要读取的列，例如@ExcelTitle(“列名”)，
+     * 字段支持String、int、long、double、BigDecimal、boolean、Date和LocalDate，以及对应的包装类型，
+     * 数字和日期单元格直接按字段类型取值，String字段得到的数字文本不应用单元格格式，读取过程不会修改工作簿。没有单元格的行会被跳过
      * @param clazz 对象类型
      * @param path excel文件对应的Path
      * @return 对象数组
@@ -48,19 +52,21 @@ public class ExcelHelper
             }
             Sheet sheet = workbook.getSheetAt(0);
             Row firstRow = sheet.getRow(0);
-            Map<Field, Integer> fieldToIndex = getFieldIndex(clazz, firstRow);
+            List<ColumnMapping> columns = getFieldIndex(clazz, firstRow);
             int rowNum = sheet.getLastRowNum();
             for (int i = 1; i <= rowNum; i++) {
                 Row row = sheet.getRow(i);
+                if (row == null) {
+                    continue;
+                }
                 T object = clazz.newInstance();
-                fieldToIndex.forEach((field, index) -> {
-                    Cell cell = row.getCell(index);
+                for (ColumnMapping column : columns) {
+                    Cell cell = row.getCell(column.index);
                     if (cell != null)
                     {
-                        cell.setCellType(Cell.CELL_TYPE_STRING);
-                        runtime(() -> field.set(object, cell.getStringCellValue()));
+                        column.set(object, column.converter.fromCell(cell));
                     }
-                });
+                }
                 result.add(object);
             }
             log.info("success load excel from: " + filePath);
@@ -69,35 +75,175 @@ public class ExcelHelper
         return result;
     }
 
+    /**
+     * 并行读取多个Excel文件的第一个sheet，按文件顺序合并为一个对象数组，映射规则同{@link #readObject(Class, Path)}，
+     * 解析线程数和同时打开的文件数为CPU核数，读取多个sheet或调整并行度见{@link ExcelBatchReader}
+     * @param clazz 对象类型
+     * @param paths excel文件对应的Path
+     * @return 对象数组
+     */
+    public static <T> List<T> readObject(Class<T> clazz, Collection<Path> paths)
+    {
+        List<T> result = new ArrayList<>();
+        for (ExcelBatchReader.SheetResult<T> sheet : new ExcelBatchReader<>(clazz).read(paths))
+        {
+            result.addAll(sheet.getRows());
+        }
+        return result;
+    }
+
+    /**
+     * 逐行读取Excel的第一个sheet，每解析出一行就映射为对象交给consumer，不会把所有行收集到内存中，
+     * 映射规则同{@link #readObject(Class, Path)}，解析基于POI的事件API，见{@link ExcelEventReader}
+     * @param clazz 对象类型
+     * @param path excel文件对应的Path
+     * @param consumer 对象的消费者
+     */
+    public static <T> void forEachRow(Class<T> clazz, Path path, Consumer<T> consumer)
+    {
+        new ExcelEventReader<>(clazz).read(path, consumer);
+    }
+
+    /**
+     * 逐行读取Excel的第一个sheet中的一部分数据行，读够limit行后立即停止解析并释放文件
+     * @param clazz 对象类型
+     * @param path excel文件对应的Path
+     * @param offset 跳过的数据行数，不包括标题行
+     * @param limit 最多读取的数据行数
+     * @param consumer 对象的消费者
+     * @see #forEachRow(Class, Path, Consumer)
+     */
+    public static <T> void forEachRow(Class<T> clazz, Path path, long offset, long limit, Consumer<T> consumer)
+    {
+        new ExcelEventReader<>(clazz).offset(offset).limit(limit).read(path, consumer);
+    }
+
+    /**
+     * 逐行读取共享字符串很多的大xlsx文件的第一个sheet，共享字符串放在内存映射的临时文件中，堆上只缓存最近用到的stringCacheSize个，
+     * 内存占用和共享字符串表的大小无关，见{@link MappedSharedStringsTable}，其余同{@link #forEachRow(Class, Path, Consumer)}
+     * @param clazz 对象类型
+     * @param path excel文件对应的Path
+     * @param stringCacheSize 堆上缓存的共享字符串个数
+     * @param consumer 对象的消费者
+     */
+    public static <T> void forEachRowWithMappedStrings(Class<T> clazz, Path path, int stringCacheSize, Consumer<T> consumer)
+    {
+        new ExcelEventReader<>(clazz).mappedSharedStrings(stringCacheSize).read(path, consumer);
+    }
+
+    /**
+     * 以流的形式逐行读取Excel的第一个sheet，解析在后台线程进行，解析出的对象马上可以消费。
+     * 流需要关闭以停止解析并释放文件，建议用try-with-resource，例如：
+     * <pre>
+     *     try (Stream&lt;Order&gt; orders = ExcelHelper.stream(Order.class, path))
+     *     {
+     *         orders.filter(...).forEach(...);
+     *     }
+     * </pre>
+     * @param clazz 对象类型
+     * @param path excel文件对应的Path
+     * @return 延迟读取的对象流
+     */
+    public static <T> Stream<T> stream(Class<T> clazz, Path path)
+    {
+        return new ExcelEventReader<>(clazz).stream(path);
+    }
+
+    /**
+     * 以流的形式读取Excel的第一个sheet中的一部分数据行，说明见{@link #stream(Class, Path)}
+     * @param clazz 对象类型
+     * @param path excel文件对应的Path
+     * @param offset 跳过的数据行数，不包括标题行
+     * @param limit 最多读取的数据行数
+     * @return 延迟读取的对象流
+     */
+    public static <T> Stream<T> stream(Class<T> clazz, Path path, long offset, long limit)
+    {
+        return new ExcelEventReader<>(clazz).offset(offset).limit(limit).stream(path);
+    }
+
+    /**
+     * 将对象逐行写入xlsx文件，文件已存在时覆盖。{@link ExcelTitle}标注的字段按声明顺序成为列，注解的值作为标题行，
+     * 写入基于SXSSF，内存中只保留最近的行，超过xlsx的行数上限时自动换sheet，更多选项见{@link ExcelWriter}
+     * @param path 文件路径
+     * @param clazz 对象类型
+     * @param objects 要写入的对象
+     * @return 写入的数据行数，不包括标题行
+     */
+    public static <T> long write(Path path, Class<T> clazz, Iterator<? extends T> objects)
+    {
+        return new ExcelWriter<>(clazz).write(path, objects);
+    }
+
     /**
      * 获取对象字段在excel中的列号
      * @param clazz 装入数据的对象
      * @param titleRow 标题行
-     * @return field到列号的map
+     * @return 字段到列的映射
      */
-    private static Map<Field, Integer> getFieldIndex(Class<?> clazz, Row titleRow)
+    private static List<ColumnMapping> getFieldIndex(Class<?> clazz, Row titleRow)
     {
-        Map<Field, Integer> fieldToIndex = new HashMap<>();
         Map<String, Integer> titleNameToIndex = new HashMap<>();
         int cellNum = titleRow.getLastCellNum();
         for (int i = 0; i < cellNum; ++i) {
             Cell cell = titleRow.getCell(i);
-            cell.setCellType(Cell.CELL_TYPE_STRING);
-            titleNameToIndex.put(cell.getStringCellValue(), i);
+            if (cell != null) {
+                titleNameToIndex.put((String) CellConverter.STRING.fromCell(cell), i);
+            }
         }
+        return getFieldIndex(clazz, titleNameToIndex);
+    }
+
+    /**
+     * 获取对象字段在excel中的列号，并按字段类型选好转换器，列名到列号的映射由调用方从标题行得到
+     * @param clazz 装入数据的对象
+     * @param titleNameToIndex 列名到列号的map
+     * @return 字段到列的映射
+     */
+    static List<ColumnMapping> getFieldIndex(Class<?> clazz, Map<String, Integer> titleNameToIndex)
+    {
+        List<ColumnMapping> columns = new ArrayList<>();
         Field[] fields = clazz.getDeclaredFields();
         for (Field field: fields) {
-            field.setAccessible(true);
             ExcelTitle annotation = field.getAnnotation(ExcelTitle.class);
             if (annotation != null) {
                 Integer index = titleNameToIndex.get(annotation.value());
                 if (index == null) {
                     throw new RuntimeException("column name '" + annotation.value() + "' not found");
                 }
-                fieldToIndex.put(field, index);
+                field.setAccessible(true);
+                columns.add(new ColumnMapping(field, index, CellConverter.of(field.getType())));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 一个字段对应的列和转换器，在读取标题行时建立，读取数据行时直接使用
+     */
+    static final class ColumnMapping
+    {
+        final Field field;
+        final int index;
+        final CellConverter converter;
+
+        ColumnMapping(Field field, int index, CellConverter converter)
+        {
+            this.field = field;
+            this.index = index;
+            this.converter = converter;
+        }
+
+        /**
+         * 为对象的字段设值，值为null并且字段是基本类型时保持默认值
+         */
+        void set(Object object, Object value)
+        {
+            if (value != null || !field.getType().isPrimitive())
+            {
+                runtime(() -> field.set(object, value));
             }
         }
-        return fieldToIndex;
     }
 
     @Target(ElementType.FIELD)
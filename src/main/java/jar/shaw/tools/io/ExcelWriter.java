@@ -0,0 +1,233 @@
+package jar.shaw.tools.io;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static jar.shaw.tools.util.ExceptionHelper.runtime;
+
+/**
+ * <p>基于{@link SXSSFWorkbook}的xlsx写入器，内存中只保留最近rowWindow行，更早的行写入临时文件，
+ * 内存占用和总行数无关</p>
+ * <p>由{@link ExcelHelper.ExcelTitle}标注的字段按声明顺序成为列，注解的值作为标题行，字段类型的支持范围和读取时相同，
+ * null值不写单元格。样式按列类型缓存，整个工作簿只创建几个样式，Excel对样式的个数有上限。
+ * 一个sheet写满xlsx的行数上限后自动新建sheet继续写，新sheet同样有标题行，名称依次为name、name_2、name_3...</p>
+ * 例如：
+ * <pre>
+ *     new ExcelWriter&lt;&gt;(Order.class).rowWindow(500).sheetName("订单").write(path, orders.iterator());
+ * </pre>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/9/29</p>
+ */
+public class ExcelWriter<T>
+{
+    private static Logger log = LoggerFactory.getLogger(ExcelWriter.class);
+
+    private final List<Field> fields = new ArrayList<>();
+    private final List<String> titles = new ArrayList<>();
+    private final List<CellConverter> converters = new ArrayList<>();
+    private int rowWindow = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+    private boolean compressTempFiles = true;
+    private String sheetName = "Sheet";
+    private int maxRowsPerSheet = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+    /**
+     * @param clazz 对象类型，至少有一个{@link ExcelHelper.ExcelTitle}标注的字段
+     */
+    public ExcelWriter(Class<T> clazz)
+    {
+        for (Field field : clazz.getDeclaredFields())
+        {
+            ExcelHelper.ExcelTitle annotation = field.getAnnotation(ExcelHelper.ExcelTitle.class);
+            if (annotation != null)
+            {
+                field.setAccessible(true);
+                fields.add(field);
+                titles.add(annotation.value());
+                converters.add(CellConverter.of(field.getType()));
+            }
+        }
+        if (fields.isEmpty())
+        {
+            throw new IllegalArgumentException("no @ExcelTitle field declared in " + clazz.getName());
+        }
+    }
+
+    /**
+     * @param rowWindow 内存中保留的行数，默认为{@link SXSSFWorkbook#DEFAULT_WINDOW_SIZE}
+     * @return this
+     */
+    public ExcelWriter<T> rowWindow(int rowWindow)
+    {
+        if (rowWindow <= 0)
+        {
+            throw new IllegalArgumentException("rowWindow must be positive: " + rowWindow);
+        }
+        this.rowWindow = rowWindow;
+        return this;
+    }
+
+    /**
+     * @param compressTempFiles 是否用gzip压缩临时文件，默认为true，压缩后临时文件小很多，写入稍慢
+     * @return this
+     */
+    public ExcelWriter<T> compressTempFiles(boolean compressTempFiles)
+    {
+        this.compressTempFiles = compressTempFiles;
+        return this;
+    }
+
+    /**
+     * @param sheetName sheet名称，默认为Sheet，换sheet时加上序号
+     * @return this
+     */
+    public ExcelWriter<T> sheetName(String sheetName)
+    {
+        this.sheetName = sheetName;
+        return this;
+    }
+
+    /**
+     * @param maxRowsPerSheet 每个sheet的最大行数，包括标题行，默认为xlsx的上限1048576
+     * @return this
+     */
+    public ExcelWriter<T> maxRowsPerSheet(int maxRowsPerSheet)
+    {
+        if (maxRowsPerSheet < 2 || maxRowsPerSheet > SpreadsheetVersion.EXCEL2007.getMaxRows())
+        {
+            throw new IllegalArgumentException("maxRowsPerSheet out of range: " + maxRowsPerSheet);
+        }
+        this.maxRowsPerSheet = maxRowsPerSheet;
+        return this;
+    }
+
+    /**
+     * 将对象逐个写入xlsx文件，文件已存在时覆盖
+     * @param path 文件路径
+     * @param objects 要写入的对象
+     * @return 写入的数据行数，不包括标题行
+     */
+    public long write(Path path, Iterator<? extends T> objects)
+    {
+        return runtime(() -> {
+            SXSSFWorkbook workbook = new SXSSFWorkbook(null, rowWindow, compressTempFiles);
+            try
+            {
+                long rows = write(workbook, objects);
+                try (OutputStream out = Files.newOutputStream(path))
+                {
+                    workbook.write(out);
+                }
+                log.info("success write " + rows + " rows to excel: " + path);
+                return rows;
+            }
+            finally
+            {
+                //删除临时文件
+                workbook.dispose();
+            }
+        });
+    }
+
+    private long write(SXSSFWorkbook workbook, Iterator<? extends T> objects) throws IllegalAccessException
+    {
+        int columns = fields.size();
+        CellStyle[] styles = styles(workbook);
+        CellStyle titleStyle = titleStyle(workbook);
+        Field[] fields = this.fields.toArray(new Field[columns]);
+        CellConverter[] converters = this.converters.toArray(new CellConverter[columns]);
+        Sheet sheet = null;
+        int rowNum = maxRowsPerSheet;
+        long rows = 0;
+        while (objects.hasNext())
+        {
+            T object = objects.next();
+            if (rowNum == maxRowsPerSheet)
+            {
+                int sheets = workbook.getNumberOfSheets();
+                sheet = workbook.createSheet(sheets == 0 ? sheetName : sheetName + "_" + (sheets + 1));
+                titleRow(sheet, titleStyle);
+                rowNum = 1;
+            }
+            Row row = sheet.createRow(rowNum++);
+            for (int i = 0; i < columns; i++)
+            {
+                Object value = fields[i].get(object);
+                if (value != null)
+                {
+                    Cell cell = row.createCell(i);
+                    converters[i].write(cell, value);
+                    if (styles[i] != null)
+                    {
+                        cell.setCellStyle(styles[i]);
+                    }
+                }
+            }
+            rows++;
+        }
+        if (sheet == null)
+        {
+            titleRow(workbook.createSheet(sheetName), titleStyle);
+        }
+        return rows;
+    }
+
+    private void titleRow(Sheet sheet, CellStyle titleStyle)
+    {
+        Row row = sheet.createRow(0);
+        for (int i = 0; i < titles.size(); i++)
+        {
+            Cell cell = row.createCell(i);
+            cell.setCellValue(titles.get(i));
+            cell.setCellStyle(titleStyle);
+        }
+    }
+
+    /**
+     * 每种需要格式的类型只创建一个样式，按列展开成数组
+     */
+    private CellStyle[] styles(SXSSFWorkbook workbook)
+    {
+        Map<CellConverter, CellStyle> cache = new EnumMap<>(CellConverter.class);
+        CellStyle[] styles = new CellStyle[converters.size()];
+        for (int i = 0; i < styles.length; i++)
+        {
+            CellConverter converter = converters.get(i);
+            if (converter.dataFormat() != null)
+            {
+                styles[i] = cache.computeIfAbsent(converter, c -> {
+                    CellStyle style = workbook.createCellStyle();
+                    style.setDataFormat(workbook.createDataFormat().getFormat(c.dataFormat()));
+                    return style;
+                });
+            }
+        }
+        return styles;
+    }
+
+    private static CellStyle titleStyle(SXSSFWorkbook workbook)
+    {
+        Font font = workbook.createFont();
+        font.setBoldweight(Font.BOLDWEIGHT_BOLD);
+        CellStyle style = workbook.createCellStyle();
+        style.setFont(font);
+        return style;
+    }
+}
@@ -4,11 +4,17 @@ import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 
 import static jar.shaw.tools.util.ExceptionHelper.runtime;
 import static java.util.Collections.reverseOrder;
@@ -21,6 +27,16 @@ import static java.util.Collections.reverseOrder;
  */
 public class FileHelper
 {
+    /**
+     * 数组的最大长度，部分虚拟机在数组头中保留了几个字
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * 长度未知时第一次读取的缓冲区大小
+     */
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
     /**
      * 用UTF-8编码将classpath上指定文件整个读成一个字符串返回，支持读取jar包中的文件
      * @param path 基于classpath的文件路径，必须以/开头
@@ -30,11 +46,12 @@ public class FileHelper
      */
     public static String readFileString(String path)
     {
-        return new String(readFileBytes(path), StandardCharsets.UTF_8);
+        return readFileString(path, StandardCharsets.UTF_8);
     }
 
     /**
-     * 用指定的编码将classpath上指定文件整个读成一个字符串返回，支持读取jar包中的文件
+     * 用指定的编码将classpath上指定文件整个读成一个字符串返回，支持读取jar包中的文件。
+     * 文件读入当前线程缓存的缓冲区后直接解码，除了结果字符串不会再分配数组
      * @param path 基于classpath的文件路径，必须以/开头
      * @param charset 编码方式
      * @return 文件内容
@@ -43,43 +60,252 @@ public class FileHelper
      */
     public static String readFileString(String path, Charset charset)
     {
-        return new String(readFileBytes(path), charset);
+        return runtime(() -> {
+            URLConnection connection = openResource(path);
+            try (InputStream is = connection.getInputStream()) {
+                return readAll(is, connection.getContentLengthLong(), (buffer, length) -> new String(buffer, 0, length, charset));
+            }
+        });
     }
 
     /**
-     * 读取classpath上指定文件的所有字节，包括jar包里的文件
+     * 读取classpath上指定文件的所有字节，包括jar包里的文件。
+     * 文件长度已知时（磁盘上的文件或jar包中记录了大小的条目）直接读入同样长度的数组，不经过中间缓冲区
      * @param path 基于classpath的文件路径，必须以/开头
      * @return 指定文件的字节码
      * @throws IOException IOException
      */
     public static byte[] readFileBytes(String path)
     {
-        InputStream is = FileHelper.class.getResourceAsStream(path);
-        byte[] bytes = readFileBytes(is);
-        runtime(is::close);
-        return bytes;
+        return runtime(() -> {
+            URLConnection connection = openResource(path);
+            try (InputStream is = connection.getInputStream()) {
+                return readFileBytes(is, connection.getContentLengthLong());
+            }
+        });
     }
 
     /**
-     * 读取classpath上指定文件的所有字节
+     * 读取classpath上指定文件的所有字节，读到流结束，不关闭流
      * @param is 输入流
      * @return 指定文件的字节码
      * @throws IOException IOException
      */
     public static byte[] readFileBytes(InputStream is)
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        byte[] buf = new byte[4 * 1024];
-        runtime(() -> {
-            int i = -1;
-            while ((i = is.read(buf)) > 0) {
-                bos.write(buf, 0, i);
+        return readFileBytes(is, -1);
+    }
+
+    /**
+     * 读取流中的所有字节，不关闭流。length是预期的长度，流的实际长度不同时仍然返回全部字节
+     * @param is 输入流
+     * @param length 预期的长度，未知时为-1
+     * @return 流中的字节
+     */
+    public static byte[] readFileBytes(InputStream is, long length)
+    {
+        return runtime(() -> {
+            if (length < 0 || length > MAX_ARRAY_SIZE) {
+                return readAll(is, -1, (buffer, n) -> Arrays.copyOf(buffer, n));
+            }
+            byte[] bytes = new byte[(int) length];
+            int n = 0;
+            while (n < bytes.length) {
+                int read = is.read(bytes, n, bytes.length - n);
+                if (read < 0) {
+                    //比预期的短
+                    return Arrays.copyOf(bytes, n);
+                }
+                n += read;
+            }
+            int next = is.read();
+            if (next < 0) {
+                return bytes;
+            }
+            //比预期的长，剩下的部分按长度未知读取后拼接
+            return readAll(is, -1, (buffer, rest) -> {
+                byte[] all = Arrays.copyOf(bytes, bytes.length + 1 + rest);
+                all[bytes.length] = (byte) next;
+                System.arraycopy(buffer, 0, all, bytes.length + 1, rest);
+                return all;
+            });
+        });
+    }
+
+    /**
+     * 打开classpath上的文件，得到的连接可以取得文件长度
+     */
+    private static URLConnection openResource(String path) throws IOException
+    {
+        URL url = FileHelper.class.getResource(path);
+        if (url == null) {
+            throw new FileNotFoundException(path + " not found");
+        }
+        return url.openConnection();
+    }
+
+    /**
+     * 把流读到结束，读入当前线程缓存的缓冲区，读满时换成两倍大的数组，最后交给finisher生成结果，finisher返回后缓冲区被归还
+     * @param is 输入流
+     * @param length 预期的长度，未知时为-1，已知时多留一个字节，读到流结束不需要扩容
+     * @param finisher 参数为缓冲区和有效长度，不能保留缓冲区的引用
+     * @return finisher的结果
+     */
+    private static <R> R readAll(InputStream is, long length, BiFunction<byte[], Integer, R> finisher) throws IOException
+    {
+        byte[] buffer = BufferPool.acquireHeap(length >= 0 && length < MAX_ARRAY_SIZE ? (int) length + 1 : INITIAL_BUFFER_SIZE);
+        try {
+            int n = 0;
+            while (true) {
+                if (n == buffer.length) {
+                    if (n == MAX_ARRAY_SIZE) {
+                        throw new OutOfMemoryError("stream is larger than the max array size");
+                    }
+                    buffer = Arrays.copyOf(buffer, (int) Math.min((long) n * 2, MAX_ARRAY_SIZE));
+                }
+                int read = is.read(buffer, n, buffer.length - n);
+                if (read < 0) {
+                    return finisher.apply(buffer, n);
+                }
+                n += read;
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * 只读映射磁盘上的文件，内容不复制到堆上，由操作系统按页读入，文件超过2GB时用{@link #mapSegments(Path)}
+     * @param path 磁盘上的文件路径
+     * @return 只读的映射区，position为0，limit为文件大小
+     */
+    public static MappedByteBuffer map(Path path)
+    {
+        return runtime(() -> {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException(path + " is larger than 2GB, use mapSegments instead");
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        });
+    }
+
+    /**
+     * 按1GB分段只读映射磁盘上的文件，可以超过2GB，按文件中的绝对位置读取时自动定位到段
+     * @param path 磁盘上的文件路径
+     * @return 映射的文件
+     */
+    public static MappedFile mapSegments(Path path)
+    {
+        return mapSegments(path, MappedFile.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * 按指定的段大小只读映射磁盘上的文件
+     * @param path 磁盘上的文件路径
+     * @param segmentSize 每段的字节数
+     * @return 映射的文件
+     */
+    public static MappedFile mapSegments(Path path, int segmentSize)
+    {
+        return runtime(() -> MappedFile.map(path, segmentSize));
+    }
+
+    /**
+     * 把UTF-8编码的文件映射为字符序列，字符在读取时才解码，不需要把整个文件读成String，
+     * 创建时会扫描一遍文件统计字符数，说明见{@link #mapText(Path, Charset)}
+     * @param path 磁盘上的文件路径
+     * @return 只读的字符序列
+     */
+    public static CharSequence mapText(Path path)
+    {
+        return mapText(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 把文件映射为字符序列，可以直接用于正则匹配等接受CharSequence的API。
+     * 只支持UTF-8、US-ASCII和ISO-8859-1，字符数不能超过int的范围，返回的序列不是线程安全的
+     * @param path 磁盘上的文件路径
+     * @param charset 文件编码
+     * @return 只读的字符序列，toString会把内容复制到堆上
+     */
+    public static CharSequence mapText(Path path, Charset charset)
+    {
+        return MappedCharSequence.of(mapSegments(path), charset);
+    }
+
+    /**
+     * 用{@link FileChannel#transferTo(long, long, WritableByteChannel)}复制文件，目标文件已存在时覆盖，
+     * 数据由操作系统在内核中复制，不经过堆
+     * @param source 源文件
+     * @param target 目标文件
+     * @return 复制的字节数
+     */
+    public static long copyFile(Path source, Path target)
+    {
+        return runtime(() -> {
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+                return copyFile(source, out);
+            }
+        });
+    }
+
+    /**
+     * 把文件的全部内容写到输出流，流是{@link FileOutputStream}时直接在通道间传输，调用方负责关闭流
+     * @param source 源文件
+     * @param out 输出流
+     * @return 复制的字节数
+     */
+    public static long copyFile(Path source, OutputStream out)
+    {
+        if (out instanceof FileOutputStream) {
+            return copyFile(source, ((FileOutputStream) out).getChannel());
+        }
+        return copyFile(source, Channels.newChannel(out));
+    }
+
+    /**
+     * 把文件的全部内容写到通道，目标是文件或socket通道时由操作系统直接传输，调用方负责关闭通道
+     * @param source 源文件
+     * @param target 目标通道
+     * @return 复制的字节数
+     */
+    public static long copyFile(Path source, WritableByteChannel target)
+    {
+        return copyFile(source, 0, Long.MAX_VALUE, target);
+    }
+
+    /**
+     * 把文件从position开始的最多count个字节写到通道，transferTo一次可能只传输一部分，这里循环到传完或文件结束
+     * @param source 源文件
+     * @param position 文件中的起始位置
+     * @param count 最多复制的字节数
+     * @param target 目标通道，调用方负责关闭
+     * @return 复制的字节数
+     */
+    public static long copyFile(Path source, long position, long count, WritableByteChannel target)
+    {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("position " + position + ", count " + count);
+        }
+        return runtime(() -> {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+                long end = Math.min(in.size(), position + Math.min(count, Long.MAX_VALUE - position));
+                long current = position;
+                while (current < end) {
+                    long transferred = in.transferTo(current, end - current, target);
+                    if (transferred <= 0) {
+                        //非阻塞通道写不进去或文件被截断
+                        break;
+                    }
+                    current += transferred;
+                }
+                return Math.max(0, current - position);
             }
-            bos.flush();
         });
-        byte[] bytes = bos.toByteArray();
-        runtime(bos::close);
-        return bytes;
     }
 
     /**
@@ -0,0 +1,300 @@
+package jar.shaw.tools.io;
+
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>把映射的文件当作字符序列，字符在读取时才解码，可以直接交给正则、解析器等接受CharSequence的代码，不需要把文件读成String</p>
+ * <p>US-ASCII和ISO-8859-1一个字节就是一个字符，按下标直接读取。UTF-8在创建时扫描一遍文件，
+ * 全是ASCII时同样按下标读取，否则每隔{@link #STRIDE}个字符记录一次字节位置，读取时从最近的记录点开始解码，
+ * 并记住上次读取的位置，顺序读取时每个字符只解码一次。非法的UTF-8字节解码为U+FFFD</p>
+ * <p>字符数不能超过int的范围。视图记录上次读取的位置，不是线程安全的，多个线程可以各自调用{@link #subSequence(int, int)}得到自己的视图</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/10/2</p>
+ */
+final class MappedCharSequence implements CharSequence
+{
+    /**
+     * UTF-8记录点之间的字符数
+     */
+    static final int STRIDE = 1024;
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final MappedFile file;
+    /**
+     * 一个字节一个字符时为true
+     */
+    private final boolean singleByte;
+    /**
+     * US-ASCII中大于127的字节解码为U+FFFD
+     */
+    private final boolean strictAscii;
+    /**
+     * UTF-8记录点，第j个记录点是第j * STRIDE个字符或下一个字符（前者是低位代理时）的起始位置，单字节时为null
+     */
+    private final int[] checkpointChars;
+    private final long[] checkpointBytes;
+    private final int start;
+    private final int end;
+    private int cursorChar;
+    private long cursorByte;
+
+    private MappedCharSequence(MappedFile file, boolean singleByte, boolean strictAscii, int[] checkpointChars,
+        long[] checkpointBytes, int start, int end)
+    {
+        this.file = file;
+        this.singleByte = singleByte;
+        this.strictAscii = strictAscii;
+        this.checkpointChars = checkpointChars;
+        this.checkpointBytes = checkpointBytes;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * 创建整个文件的字符视图
+     * @param file 映射的文件
+     * @param charset 只支持UTF-8、US-ASCII和ISO-8859-1
+     * @return 字符视图
+     */
+    static MappedCharSequence of(MappedFile file, Charset charset)
+    {
+        if (StandardCharsets.US_ASCII.equals(charset) || StandardCharsets.ISO_8859_1.equals(charset))
+        {
+            return new MappedCharSequence(file, true, StandardCharsets.US_ASCII.equals(charset), null, null, 0,
+                checkLength(file.size()));
+        }
+        if (!StandardCharsets.UTF_8.equals(charset))
+        {
+            throw new IllegalArgumentException("only UTF-8, US-ASCII and ISO-8859-1 supported: " + charset);
+        }
+        return utf8(file);
+    }
+
+    /**
+     * 扫描文件统计字符数，同时记录每STRIDE个字符的字节位置
+     */
+    private static MappedCharSequence utf8(MappedFile file)
+    {
+        long size = file.size();
+        int[] chars = new int[16];
+        long[] bytes = new long[16];
+        int checkpoints = 0;
+        long length = 0;
+        boolean ascii = true;
+        long position = 0;
+        for (int s = 0; s < file.getSegmentCount(); s++)
+        {
+            MappedByteBuffer segment = file.getSegment(s);
+            long segmentStart = (long) s * file.getSegmentSize();
+            int limit = segment.limit();
+            //上一段末尾的多字节字符可能已经越过了本段开头
+            int i = (int) (position - segmentStart);
+            while (i < limit)
+            {
+                if (length >= (long) checkpoints * STRIDE)
+                {
+                    if (checkpoints == chars.length)
+                    {
+                        chars = Arrays.copyOf(chars, checkpoints * 2);
+                        bytes = Arrays.copyOf(bytes, checkpoints * 2);
+                    }
+                    chars[checkpoints] = checkLength(length);
+                    bytes[checkpoints] = segmentStart + i;
+                    checkpoints++;
+                }
+                byte b = segment.get(i);
+                if (b >= 0)
+                {
+                    length++;
+                    i++;
+                }
+                else
+                {
+                    ascii = false;
+                    int decoded = decode(file, segmentStart + i, size);
+                    length += Character.charCount(decoded >>> 3);
+                    i += decoded & 7;
+                }
+            }
+            position = segmentStart + i;
+        }
+        int total = checkLength(length);
+        if (ascii)
+        {
+            return new MappedCharSequence(file, true, false, null, null, 0, total);
+        }
+        return new MappedCharSequence(file, false, false, Arrays.copyOf(chars, checkpoints),
+            Arrays.copyOf(bytes, checkpoints), 0, total);
+    }
+
+    private static int checkLength(long length)
+    {
+        if (length > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("too many chars for a CharSequence: " + length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * 解码position处的一个UTF-8字符，非法的字节序列按最长的合法前缀解码为一个U+FFFD
+     * @return 码点左移3位，低3位是字节数
+     */
+    private static int decode(MappedFile file, long position, long size)
+    {
+        int lead = file.get(position) & 0xFF;
+        if (lead < 0x80)
+        {
+            return lead << 3 | 1;
+        }
+        int need;
+        int codePoint;
+        int min = 0x80;
+        int max = 0xBF;
+        if (lead >= 0xC2 && lead <= 0xDF)
+        {
+            need = 1;
+            codePoint = lead & 0x1F;
+        }
+        else if (lead >= 0xE0 && lead <= 0xEF)
+        {
+            need = 2;
+            codePoint = lead & 0x0F;
+            if (lead == 0xE0)
+            {
+                //过长编码
+                min = 0xA0;
+            }
+        }
+        else if (lead >= 0xF0 && lead <= 0xF4)
+        {
+            need = 3;
+            codePoint = lead & 0x07;
+            if (lead == 0xF0)
+            {
+                min = 0x90;
+            }
+            else if (lead == 0xF4)
+            {
+                //超过U+10FFFF
+                max = 0x8F;
+            }
+        }
+        else
+        {
+            return REPLACEMENT << 3 | 1;
+        }
+        for (int i = 1; i <= need; i++)
+        {
+            int next = position + i < size ? file.get(position + i) & 0xFF : -1;
+            if (next < min || next > max)
+            {
+                return REPLACEMENT << 3 | i;
+            }
+            codePoint = codePoint << 6 | (next & 0x3F);
+            min = 0x80;
+            max = 0xBF;
+        }
+        if (need == 2 && Character.isSurrogate((char) codePoint))
+        {
+            //编码成UTF-8的代理字符，和JDK一样整体解码为一个U+FFFD
+            return REPLACEMENT << 3 | 3;
+        }
+        return codePoint << 3 | (need + 1);
+    }
+
+    @Override
+    public int length()
+    {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        if (index < 0 || index >= end - start)
+        {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+        }
+        int target = start + index;
+        if (singleByte)
+        {
+            int b = file.get(target) & 0xFF;
+            return strictAscii && b > 0x7F ? REPLACEMENT : (char) b;
+        }
+        seek(target);
+        int codePoint = decode(file, cursorByte, file.size()) >>> 3;
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT)
+        {
+            return (char) codePoint;
+        }
+        return target == cursorChar ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+    }
+
+    /**
+     * 把游标移到包含第target个字符的码点的起始位置，目标在游标之后不远时从游标继续，否则从最近的记录点开始
+     */
+    private void seek(int target)
+    {
+        if (target < cursorChar || target - cursorChar > STRIDE)
+        {
+            //文件以跨记录点的代理对结尾时最后一个记录点不存在
+            int j = Math.min(target / STRIDE, checkpointChars.length - 1);
+            if (checkpointChars[j] > target)
+            {
+                j--;
+            }
+            cursorChar = checkpointChars[j];
+            cursorByte = checkpointBytes[j];
+        }
+        long size = file.size();
+        while (true)
+        {
+            int decoded = decode(file, cursorByte, size);
+            int chars = Character.charCount(decoded >>> 3);
+            if (cursorChar + chars > target)
+            {
+                return;
+            }
+            cursorChar += chars;
+            cursorByte += decoded & 7;
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        if (start < 0 || end > this.end - this.start || start > end)
+        {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + (this.end - this.start));
+        }
+        return new MappedCharSequence(file, singleByte, strictAscii, checkpointChars, checkpointBytes,
+            this.start + start, this.start + end);
+    }
+
+    /**
+     * @return 把视图中的字符复制成String，整个大文件调用时会占用同样大小的堆
+     */
+    @Override
+    public String toString()
+    {
+        int length = end - start;
+        if (singleByte)
+        {
+            byte[] bytes = new byte[length];
+            file.get(start, bytes);
+            return new String(bytes, strictAscii ? StandardCharsets.US_ASCII : StandardCharsets.ISO_8859_1);
+        }
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+        {
+            builder.append(charAt(i));
+        }
+        return builder.toString();
+    }
+}
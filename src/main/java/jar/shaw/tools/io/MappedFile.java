@@ -0,0 +1,199 @@
+package jar.shaw.tools.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>按段只读映射的文件，一个{@link MappedByteBuffer}最多映射2GB，更大的文件拆成多个段，
+ * 按文件中的绝对位置读取时自动定位到段，数据可以跨段</p>
+ * <p>映射区由操作系统按页换入换出，不占用堆。按绝对位置读取不修改段的position，多个线程可以同时读取，
+ * 直接使用{@link #getSegment(int)}做相对读取时应先duplicate。
+ * Java 8不能主动解除映射，映射在对象被回收后释放，Windows上映射期间不能删除文件</p>
+ * 通过{@link FileHelper#mapSegments(Path)}获得
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/10/2</p>
+ */
+public final class MappedFile
+{
+    /**
+     * 默认的段大小，1GB
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final Path path;
+    private final long size;
+    private final int segmentSize;
+    private final MappedByteBuffer[] segments;
+
+    private MappedFile(Path path, long size, int segmentSize, MappedByteBuffer[] segments)
+    {
+        this.path = path;
+        this.size = size;
+        this.segmentSize = segmentSize;
+        this.segments = segments;
+    }
+
+    /**
+     * 按segmentSize分段映射整个文件，映射后关闭通道，已经建立的映射不受影响
+     * @param path 文件路径
+     * @param segmentSize 每段的字节数
+     * @return 映射的文件
+     * @throws IOException 打开或映射失败
+     */
+    static MappedFile map(Path path, int segmentSize) throws IOException
+    {
+        if (segmentSize <= 0)
+        {
+            throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++)
+            {
+                long position = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+            }
+            return new MappedFile(path, size, segmentSize, segments);
+        }
+    }
+
+    /**
+     * @return 映射的文件路径
+     */
+    public Path getPath()
+    {
+        return path;
+    }
+
+    /**
+     * @return 映射时文件的字节数
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * @return 每段的字节数，最后一段可能更小
+     */
+    public int getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+    /**
+     * @return 段数，空文件为0
+     */
+    public int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+    /**
+     * 得到第index段，段从文件的index * segmentSize处开始。返回的缓冲区由所有调用方共享，只应做绝对读取或duplicate后使用
+     * @param index 段号
+     * @return 只读的映射区
+     */
+    public MappedByteBuffer getSegment(int index)
+    {
+        return segments[index];
+    }
+
+    /**
+     * 读取position处的一个字节
+     * @param position 文件中的位置
+     * @return 字节
+     */
+    public byte get(long position)
+    {
+        checkRange(position, 1);
+        return segments[(int) (position / segmentSize)].get((int) (position % segmentSize));
+    }
+
+    /**
+     * 按大端序读取position处的long，可以跨段
+     * @param position 文件中的位置
+     * @return long值
+     */
+    public long getLong(long position)
+    {
+        checkRange(position, 8);
+        MappedByteBuffer segment = segments[(int) (position / segmentSize)];
+        int offset = (int) (position % segmentSize);
+        if (offset + 8 <= segment.limit())
+        {
+            return segment.getLong(offset);
+        }
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            value = (value << 8) | (get(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * 从position开始复制dst.length个字节，可以跨段
+     * @param position 文件中的位置
+     * @param dst 目标数组
+     */
+    public void get(long position, byte[] dst)
+    {
+        get(position, dst, 0, dst.length);
+    }
+
+    /**
+     * 从position开始复制length个字节到dst的offset处，可以跨段
+     * @param position 文件中的位置
+     * @param dst 目标数组
+     * @param offset 数组中的起始位置
+     * @param length 字节数
+     */
+    public void get(long position, byte[] dst, int offset, int length)
+    {
+        checkRange(position, length);
+        int copied = 0;
+        while (copied < length)
+        {
+            long current = position + copied;
+            //复制出一个视图，不修改共享的position，多线程读取时不需要同步
+            ByteBuffer segment = segments[(int) (current / segmentSize)].duplicate();
+            segment.position((int) (current % segmentSize));
+            int count = Math.min(length - copied, segment.remaining());
+            segment.get(dst, offset + copied, count);
+            copied += count;
+        }
+    }
+
+    /**
+     * 提示操作系统把整个文件读入内存，之后的读取不会再发生缺页读盘，文件比物理内存大时没有意义
+     */
+    public void load()
+    {
+        for (MappedByteBuffer segment : segments)
+        {
+            segment.load();
+        }
+    }
+
+    private void checkRange(long position, long length)
+    {
+        if (position < 0 || length < 0 || position + length > size)
+        {
+            throw new IndexOutOfBoundsException("position " + position + ", length " + length + ", size " + size);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MappedFile{" + path + ", size=" + size + ", segments=" + segments.length + "}";
+    }
+}
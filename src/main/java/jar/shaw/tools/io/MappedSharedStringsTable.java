@@ -0,0 +1,370 @@
+package jar.shaw.tools.io;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>把xlsx的共享字符串放在内存映射的临时文件中，堆上只保留最近用到的cacheSize个字符串，
+ * 共享字符串表比堆还大的文件也可以用固定的内存读取</p>
+ * <p>构造时用SAX解析sharedStrings.xml，每个字符串按UTF-8顺序写入数据文件，起始位置写入索引文件，
+ * 两个文件解析完后用{@link MappedFile}按1GB分段只读映射，所以可以超过2GB。按下标取字符串时从索引得到位置和长度，
+ * 从映射区复制出字节解码，解码后的字符串放入LRU缓存。映射区由操作系统按页换入换出，不占用堆</p>
+ * <p>可以直接传给{@link org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler}，
+ * 也可以通过{@link ExcelEventReader#mappedSharedStrings(int)}使用。
+ * 多个线程可以同时读取，用完后需要关闭以删除临时文件。富文本的注音（rPh）不计入字符串</p>
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/10/1</p>
+ */
+public class MappedSharedStringsTable extends ReadOnlySharedStringsTable implements Closeable
+{
+    private static Logger log = LoggerFactory.getLogger(MappedSharedStringsTable.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /*
+     * 父类构造器会调用readFrom，此时子类的字段还没有初始化，
+     * 所以下面的字段都不能有初始化表达式，否则readFrom中的赋值会在父类构造器返回后被覆盖
+     */
+    private boolean initialized;
+    private int cacheSize;
+    private Map<Integer, String> cache;
+    private Path dataFile;
+    private Path indexFile;
+    private MappedFile data;
+    private MappedFile index;
+    private int size;
+    private int count;
+    private int uniqueCount;
+
+    /**
+     * @param pkg 只读打开的xlsx包
+     * @param cacheSize 缓存的已解码字符串个数，0表示不缓存
+     * @throws IOException 读取或写临时文件失败
+     * @throws SAXException 解析失败
+     */
+    public MappedSharedStringsTable(OPCPackage pkg, int cacheSize) throws IOException, SAXException
+    {
+        //父类构造器中的readFrom被跳过
+        super(pkg);
+        if (cacheSize < 0)
+        {
+            throw new IllegalArgumentException("cacheSize must not be negative: " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<Integer, String>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest)
+            {
+                return size() > MappedSharedStringsTable.this.cacheSize;
+            }
+        };
+        initialized = true;
+        List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (parts.isEmpty())
+        {
+            //有的工作簿没有共享字符串
+            readFrom(null);
+        }
+        else
+        {
+            try (InputStream in = parts.get(0).getInputStream())
+            {
+                readFrom(in);
+            }
+        }
+    }
+
+    /**
+     * 解析共享字符串写入临时文件并映射，在父类构造器中调用时什么也不做，由子类构造器再调用一次
+     * @param is sharedStrings.xml的输入流，为null时是空表
+     */
+    @Override
+    public void readFrom(InputStream is) throws IOException, SAXException
+    {
+        if (!initialized)
+        {
+            return;
+        }
+        close();
+        dataFile = Files.createTempFile("shared-strings-", ".dat");
+        indexFile = Files.createTempFile("shared-strings-", ".idx");
+        try
+        {
+            StringsWriter writer;
+            try (DataOutputStream dataOut = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(dataFile), BUFFER_SIZE));
+                DataOutputStream indexOut = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(indexFile), BUFFER_SIZE)))
+            {
+                writer = new StringsWriter(dataOut, indexOut);
+                if (is != null)
+                {
+                    XMLReader parser = SAXHelper.newXMLReader();
+                    parser.setContentHandler(writer);
+                    parser.parse(new InputSource(is));
+                }
+                //最后一个字符串的结束位置
+                indexOut.writeLong(writer.offset);
+            }
+            data = MappedFile.map(dataFile, MappedFile.DEFAULT_SEGMENT_SIZE);
+            index = MappedFile.map(indexFile, MappedFile.DEFAULT_SEGMENT_SIZE);
+            size = writer.strings;
+            count = writer.count;
+            uniqueCount = writer.uniqueCount < 0 ? writer.strings : writer.uniqueCount;
+            log.info("mapped " + size + " shared strings, " + writer.offset + " bytes");
+        }
+        catch (ParserConfigurationException e)
+        {
+            close();
+            throw new SAXException(e);
+        }
+        catch (IOException | SAXException | RuntimeException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getCount()
+    {
+        return count;
+    }
+
+    @Override
+    public int getUniqueCount()
+    {
+        return uniqueCount;
+    }
+
+    /**
+     * @param idx 字符串的下标
+     * @return 共享字符串
+     */
+    @Override
+    public String getEntryAt(int idx)
+    {
+        synchronized (cache)
+        {
+            String cached = cache.get(idx);
+            if (cached != null)
+            {
+                return cached;
+            }
+        }
+        if (idx < 0 || idx >= size)
+        {
+            throw new IndexOutOfBoundsException("shared string index " + idx + ", size " + size);
+        }
+        long start = index.getLong(idx * 8L);
+        long end = index.getLong(idx * 8L + 8);
+        int length = (int) (end - start);
+        byte[] bytes = BufferPool.acquireHeap(length);
+        String value;
+        try
+        {
+            data.get(start, bytes, 0, length);
+            value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        finally
+        {
+            BufferPool.release(bytes);
+        }
+        synchronized (cache)
+        {
+            cache.put(idx, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return 按需解码的只读视图，不会把所有字符串放到堆上
+     */
+    @Override
+    public List<String> getItems()
+    {
+        return new AbstractList<String>()
+        {
+            @Override
+            public String get(int index)
+            {
+                return getEntryAt(index);
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * 删除临时文件。Java 8不能主动解除映射，映射区在被回收时释放，
+     * 不允许删除已映射文件的系统（Windows）上改为在JVM退出时删除
+     */
+    @Override
+    public void close()
+    {
+        data = null;
+        index = null;
+        delete(dataFile);
+        delete(indexFile);
+        dataFile = null;
+        indexFile = null;
+        if (cache != null)
+        {
+            synchronized (cache)
+            {
+                cache.clear();
+            }
+        }
+    }
+
+    private static void delete(Path file)
+    {
+        if (file == null)
+        {
+            return;
+        }
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e)
+        {
+            log.warn("failed to delete " + file + ", will delete on exit: " + e.getLocalizedMessage());
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * 解析sharedStrings.xml，每个si元素结束时把其中t元素的文本写入数据文件，起始位置写入索引文件
+     */
+    private static final class StringsWriter extends DefaultHandler
+    {
+        private final DataOutputStream dataOut;
+        private final DataOutputStream indexOut;
+        private final StringBuilder text = new StringBuilder();
+        private boolean inText;
+        private boolean inPhonetic;
+        private long offset;
+        private int strings;
+        private int count = -1;
+        private int uniqueCount = -1;
+
+        StringsWriter(DataOutputStream dataOut, DataOutputStream indexOut)
+        {
+            this.dataOut = dataOut;
+            this.indexOut = indexOut;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+        {
+            switch (name(localName, qName))
+            {
+                case "sst":
+                    count = parseCount(attributes.getValue("count"));
+                    uniqueCount = parseCount(attributes.getValue("uniqueCount"));
+                    break;
+                case "si":
+                    text.setLength(0);
+                    break;
+                case "t":
+                    inText = true;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException
+        {
+            switch (name(localName, qName))
+            {
+                case "si":
+                    write();
+                    break;
+                case "t":
+                    inText = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+        {
+            if (inText && !inPhonetic)
+            {
+                text.append(ch, start, length);
+            }
+        }
+
+        private void write() throws SAXException
+        {
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            try
+            {
+                indexOut.writeLong(offset);
+                dataOut.write(bytes);
+            }
+            catch (IOException e)
+            {
+                throw new SAXException(e);
+            }
+            offset += bytes.length;
+            strings++;
+        }
+
+        private static String name(String localName, String qName)
+        {
+            if (localName != null && !localName.isEmpty())
+            {
+                return localName;
+            }
+            int colon = qName.indexOf(':');
+            return colon < 0 ? qName : qName.substring(colon + 1);
+        }
+
+        private static int parseCount(String value)
+        {
+            return value == null ? -1 : Integer.parseInt(value);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package jar.shaw.tools.db;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 布尔值经过临时CSV文件和批量加载语句后保持不变
+ * @author 肖佳
+ * @since 1.8
+ * <p>创建时间：2019/10/5</p>
+ */
+public class BulkLoaderTest
+{
+    public static class FlagRow
+    {
+        private Integer num;
+        private Boolean flag;
+
+        FlagRow(Integer num, Boolean flag)
+        {
+            this.num = num;
+            this.flag = flag;
+        }
+
+        public Integer getNum()
+        {
+            return num;
+        }
+
+        public Boolean getFlag()
+        {
+            return flag;
+        }
+    }
+
+    @Test
+    public void mysqlLoadsBooleanColumnsThroughUserVariables()
+    {
+        String sql = StandardDialect.MYSQL.bulkLoadSQL("flag_row", Arrays.asList("num", "flag"),
+            Arrays.asList(Integer.class, Boolean.class), "/tmp/flag_row.csv");
+        assertTrue(sql, sql.endsWith("(`num`,@v1) SET `flag`=(@v1='1')"));
+    }
+
+    @Test
+    public void falseRoundTrips() throws Exception
+    {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:bulk_loader_test"))
+        {
+            try (Statement statement = connection.createStatement())
+            {
+                statement.execute("CREATE TABLE flag_row(id bigint AUTO_INCREMENT PRIMARY KEY, num int, flag bit)");
+            }
+            List<FlagRow> rows = Arrays.asList(new FlagRow(1, false), new FlagRow(2, true), new FlagRow(3, null));
+            BulkLoadResult result = new BulkLoader().dialect(StandardDialect.H2).load(connection, rows);
+            assertTrue(result.isBulk());
+            assertEquals(3, result.getRows());
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT flag FROM flag_row ORDER BY num"))
+            {
+                assertTrue(rs.next());
+                assertEquals(Boolean.FALSE, rs.getObject(1));
+                assertTrue(rs.next());
+                assertEquals(Boolean.TRUE, rs.getObject(1));
+                assertTrue(rs.next());
+                assertNull(rs.getObject(1));
+            }
+        }
+    }
+}